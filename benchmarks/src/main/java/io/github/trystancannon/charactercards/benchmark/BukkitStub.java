@@ -0,0 +1,299 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Trystan Cannon.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.trystancannon.charactercards.benchmark;
+
+import io.github.trystancannon.charactercards.core.CharacterCards;
+import io.github.trystancannon.charactercards.metrics.PluginMetrics;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.command.CommandSender;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.inventory.ItemFactory;
+import org.bukkit.inventory.meta.BookMeta;
+import org.bukkit.plugin.java.JavaPlugin;
+
+/**
+ * Just enough of a Bukkit server for the benchmarks to run without one.
+ * 
+ * Every Bukkit interface the plugin touches is a dynamic proxy. Methods which
+ * matter to the benchmarks, e.g. the pages of a <code>BookMeta</code>, behave
+ * like the server's. Everything else does nothing and returns a default value.
+ * 
+ * @author Trystan Cannon
+ */
+public final class BukkitStub {
+    private static final Logger LOGGER = Logger.getLogger("BukkitStub");
+    
+    private BukkitStub() {
+    }
+    
+    /**
+     * Installs the stub server, unless it already is.
+     */
+    public static synchronized void install() {
+        if (Bukkit.getServer() == null) {
+            Bukkit.setServer(newProxy(Server.class, new ServerHandler()));
+        }
+    }
+    
+    /**
+     * Creates a plugin instance which was never enabled. Its server is the
+     * stub and its config is empty, so every setting has its default. It has
+     * metrics, but no storage.
+     * 
+     * A <code>JavaPlugin</code> can only be constructed by a plugin class
+     * loader, so the instance is allocated without running any constructor.
+     * 
+     * @return Plugin.
+     * @throws ReflectiveOperationException 
+     */
+    public static CharacterCards newPlugin() throws ReflectiveOperationException {
+        install();
+        
+        Field unsafeField = Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe");
+        unsafeField.setAccessible(true);
+        Object unsafe = unsafeField.get(null);
+        CharacterCards plugin = (CharacterCards) unsafe.getClass().getMethod("allocateInstance", Class.class).invoke(unsafe, CharacterCards.class);
+        
+        setField(JavaPlugin.class, plugin, "server", Bukkit.getServer());
+        setField(JavaPlugin.class, plugin, "newConfig", new YamlConfiguration());
+        setField(CharacterCards.class, plugin, "metrics", new PluginMetrics());
+        
+        return plugin;
+    }
+    
+    /**
+     * @return Command sender which isn't a player, e.g. the console.
+     */
+    public static CommandSender newSender() {
+        return newProxy(CommandSender.class, new DefaultHandler("Console"));
+    }
+    
+    /**
+     * @param pages
+     * @return Book meta holding the given pages.
+     */
+    public static BookMeta newBookMeta(String... pages) {
+        return newProxy(BookMeta.class, new BookHandler(Arrays.asList(pages)));
+    }
+    
+    /**
+     * Reads a private static field, e.g. one of the plugin's indexes.
+     * 
+     * @param owner
+     * @param name
+     * @return Value of the field.
+     * @throws ReflectiveOperationException 
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T getStaticField(Class<?> owner, String name) throws ReflectiveOperationException {
+        Field field = owner.getDeclaredField(name);
+        field.setAccessible(true);
+        return (T) field.get(null);
+    }
+    
+    private static void setField(Class<?> owner, Object target, String name, Object value) throws ReflectiveOperationException {
+        Field field = owner.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(target, value);
+    }
+    
+    private static <T> T newProxy(Class<T> type, InvocationHandler handler) {
+        return type.cast(Proxy.newProxyInstance(BukkitStub.class.getClassLoader(), new Class<?>[] {type}, handler));
+    }
+    
+    /**
+     * Does nothing, returning the default value of each method's return type.
+     */
+    private static class DefaultHandler implements InvocationHandler {
+        private final String name;
+        
+        private DefaultHandler(String name) {
+            this.name = name;
+        }
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                case "getName":
+                    return name;
+                default:
+                    return defaultValue(method.getReturnType());
+            }
+        }
+        
+        private static Object defaultValue(Class<?> type) {
+            if (type == boolean.class) {
+                return false;
+            } else if (type == int.class) {
+                return 0;
+            } else if (type == long.class) {
+                return 0L;
+            } else if (type == double.class) {
+                return 0.0;
+            } else if (type == float.class) {
+                return 0.0f;
+            } else if (type == short.class) {
+                return (short) 0;
+            } else if (type == byte.class) {
+                return (byte) 0;
+            } else if (type == char.class) {
+                return '\0';
+            } else if (type == List.class || type == Collection.class) {
+                return Collections.emptyList();
+            } else if (type == Set.class) {
+                return Collections.emptySet();
+            } else if (type == Map.class) {
+                return Collections.emptyMap();
+            }
+            
+            return null;
+        }
+    }
+    
+    private static final class ServerHandler extends DefaultHandler {
+        private final ItemFactory itemFactory = newProxy(ItemFactory.class, new ItemFactoryHandler());
+        
+        private ServerHandler() {
+            super("BukkitStub");
+        }
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "getLogger":
+                    return LOGGER;
+                case "getItemFactory":
+                    return itemFactory;
+                case "isPrimaryThread":
+                    return true;
+                case "getVersion":
+                case "getBukkitVersion":
+                    return "stub";
+                default:
+                    // Scheduler, plugin manager, etc. which do nothing.
+                    if (method.getReturnType().isInterface() && !Collection.class.isAssignableFrom(method.getReturnType()) && !Map.class.isAssignableFrom(method.getReturnType())) {
+                        return newProxy(method.getReturnType(), new DefaultHandler(method.getReturnType().getSimpleName()));
+                    }
+                    
+                    return super.invoke(proxy, method, args);
+            }
+        }
+    }
+    
+    /**
+     * Hands out book metas for every item, and treats metas like the server's
+     * item factory does.
+     */
+    private static final class ItemFactoryHandler extends DefaultHandler {
+        private ItemFactoryHandler() {
+            super("ItemFactory");
+        }
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "getItemMeta":
+                    return newBookMeta();
+                case "isApplicable":
+                    return true;
+                case "asMetaFor":
+                    return args[0];
+                case "equals":
+                    if (args.length == 2) {
+                        return args[0] == null ? args[1] == null : args[0].equals(args[1]);
+                    }
+                    
+                    return super.invoke(proxy, method, args);
+                default:
+                    return super.invoke(proxy, method, args);
+            }
+        }
+    }
+    
+    /**
+     * A book's pages, which are numbered from 1.
+     */
+    private static final class BookHandler extends DefaultHandler {
+        private final List<String> pages;
+        
+        private BookHandler(List<String> pages) {
+            super("BookMeta");
+            this.pages = new ArrayList<>(pages);
+        }
+        
+        @Override
+        @SuppressWarnings("unchecked")
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "getPages":
+                    return Collections.unmodifiableList(new ArrayList<>(pages));
+                case "getPage":
+                    return pages.get((Integer) args[0] - 1);
+                case "setPage":
+                    pages.set((Integer) args[0] - 1, (String) args[1]);
+                    return null;
+                case "getPageCount":
+                    return pages.size();
+                case "hasPages":
+                    return !pages.isEmpty();
+                case "setPages":
+                    pages.clear();
+                    pages.addAll(args[0] instanceof List ? (List<String>) args[0] : Arrays.asList((String[]) args[0]));
+                    return null;
+                case "addPage":
+                    pages.addAll(Arrays.asList((String[]) args[0]));
+                    return null;
+                case "clone":
+                    return newProxy(BookMeta.class, new BookHandler(pages));
+                case "equals":
+                    Object other = args[0];
+                    return other != null && Proxy.isProxyClass(other.getClass()) && Proxy.getInvocationHandler(other) instanceof BookHandler
+                            && ((BookHandler) Proxy.getInvocationHandler(other)).pages.equals(pages);
+                case "hashCode":
+                    return pages.hashCode();
+                default:
+                    return super.invoke(proxy, method, args);
+            }
+        }
+    }
+}
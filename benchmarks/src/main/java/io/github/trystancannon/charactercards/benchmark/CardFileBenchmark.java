@@ -0,0 +1,101 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Trystan Cannon.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.trystancannon.charactercards.benchmark;
+
+import io.github.trystancannon.charactercards.card.CharacterCard;
+import io.github.trystancannon.charactercards.storage.CardFileFormat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reads and writes a single card file in each format. The text format reads
+ * through <code>CharacterCard.fromFile</code> and writes through
+ * <code>CharacterCard.saveToFile</code>.
+ * 
+ * @author Trystan Cannon
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CardFileBenchmark {
+    @Param({"TEXT", "BINARY"})
+    public CardFileFormat format;
+    
+    /**
+     * Length of the card's description, in characters.
+     */
+    @Param({"64", "4096"})
+    public int descriptionLength;
+    
+    private File folder;
+    private File file;
+    private CharacterCard card;
+    
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BukkitStub.install();
+        
+        folder = Files.createTempDirectory("card-file-benchmark").toFile();
+        card = SampleCards.newCard(UUID.randomUUID(), descriptionLength, new Random(42));
+        file = format.getFile(folder, card.getPlayerId());
+        format.write(card, file);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+        folder.delete();
+    }
+    
+    @Benchmark
+    public CharacterCard read() throws IOException {
+        return format.read(file);
+    }
+    
+    @Benchmark
+    public void write() throws IOException {
+        format.write(card, file);
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Trystan Cannon.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.trystancannon.charactercards.benchmark;
+
+import io.github.trystancannon.charactercards.card.CardRegistry;
+import io.github.trystancannon.charactercards.card.CharacterCard;
+import io.github.trystancannon.charactercards.core.CharacterCards;
+import io.github.trystancannon.charactercards.user.PlayerNameIndex;
+
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.bukkit.inventory.meta.BookMeta;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Looks up cards through <code>CharacterCards.getCardForPlayer</code>, by
+ * player id, by player name and by description book.
+ * 
+ * Each benchmark cycles through a fixed set of players, so the lookups don't
+ * keep hitting the same cached entry.
+ * 
+ * @author Trystan Cannon
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CardLookupBenchmark {
+    /**
+     * Number of players queried by the benchmarks, a power of two.
+     */
+    private static final int SAMPLE_SIZE = 512;
+    
+    @Param({"1000", "100000"})
+    public int cardCount;
+    
+    private final UUID[] playerIds = new UUID[SAMPLE_SIZE];
+    private final String[] playerNames = new String[SAMPLE_SIZE];
+    private final BookMeta[] books = new BookMeta[SAMPLE_SIZE];
+    
+    /**
+     * A book without an identifier page, which matches no card.
+     */
+    private BookMeta unknownBook;
+    
+    private int next = 0;
+    
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        BukkitStub.install();
+        
+        CardRegistry cards = BukkitStub.getStaticField(CharacterCards.class, "cards");
+        PlayerNameIndex names = BukkitStub.getStaticField(CharacterCards.class, "playerNames");
+        Random random = new Random(42);
+        
+        // Keep every card in memory.
+        cards.setUnpinnedCapacity(cardCount);
+        
+        for (int i = 0; i < cardCount; i++) {
+            UUID playerId = new UUID(random.nextLong(), random.nextLong());
+            CharacterCard card = CharacterCards.createCardForPlayer(playerId);
+            names.update(playerId, "Player" + i);
+            
+            if (i < SAMPLE_SIZE) {
+                playerIds[i] = playerId;
+                playerNames[i] = "player" + i;
+                books[i] = (BookMeta) card.getDescriptionBook().getItemMeta();
+            }
+        }
+        
+        unknownBook = BukkitStub.newBookMeta("A book which was never a description book.");
+    }
+    
+    private int nextIndex() {
+        return next++ & (SAMPLE_SIZE - 1);
+    }
+    
+    @Benchmark
+    public CharacterCard byPlayerId() {
+        return CharacterCards.getCardForPlayer(playerIds[nextIndex()]);
+    }
+    
+    @Benchmark
+    public CharacterCard byPlayerName() {
+        return CharacterCards.getCardForPlayer(playerNames[nextIndex()]);
+    }
+    
+    @Benchmark
+    public CharacterCard byDescriptionBook() {
+        return CharacterCards.getCardForPlayer(books[nextIndex()]);
+    }
+    
+    /**
+     * Worst case of a book lookup: no identifier page, so every card's pages
+     * are compared with the book's.
+     * 
+     * @return <code>null</code>
+     */
+    @Benchmark
+    public CharacterCard byUnknownBook() {
+        return CharacterCards.getCardForPlayer(unknownBook);
+    }
+}
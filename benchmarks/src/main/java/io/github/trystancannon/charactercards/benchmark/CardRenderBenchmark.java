@@ -0,0 +1,139 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Trystan Cannon.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.trystancannon.charactercards.benchmark;
+
+import io.github.trystancannon.charactercards.card.CharacterCard;
+import io.github.trystancannon.charactercards.card.DescriptionLayout;
+
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.meta.BookMeta;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Renders a card's description: as text, as chat lines, as book pages, and
+ * back from an edited book.
+ * 
+ * @author Trystan Cannon
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CardRenderBenchmark {
+    /**
+     * Characters per page, as used by <code>CharacterCard</code>.
+     */
+    private static final int PAGE_LENGTH = 256;
+    
+    /**
+     * Length of the card's description, in characters.
+     */
+    @Param({"64", "4096", "65536"})
+    public int descriptionLength;
+    
+    private CharacterCard card;
+    private String description;
+    private BookMeta editedBook;
+    
+    @Setup
+    public void setUp() {
+        BukkitStub.install();
+        
+        Random random = new Random(42);
+        card = SampleCards.newCard(UUID.randomUUID(), descriptionLength, random);
+        description = card.getDescription();
+        
+        // The book as the player left it after an edit.
+        editedBook = (BookMeta) card.getDescriptionBook().getItemMeta();
+        editedBook.addPage(SampleCards.newDescription(200, random));
+    }
+    
+    @Benchmark
+    public String description() {
+        return card.getDescription();
+    }
+    
+    /**
+     * Lays the description out on pages, which is done whenever it changes.
+     * 
+     * @return Pages.
+     */
+    @Benchmark
+    public List<String> paginate() {
+        return DescriptionLayout.paginate(description, PAGE_LENGTH);
+    }
+    
+    /**
+     * Chat lines of a card which was just edited, so aren't cached yet.
+     * 
+     * @return Chat lines.
+     */
+    @Benchmark
+    public String[] viewLinesUncached() {
+        return card.copy().getViewLines();
+    }
+    
+    @Benchmark
+    public String[] viewLinesCached() {
+        return card.getViewLines();
+    }
+    
+    @Benchmark
+    public List<String> descriptionBookPages() {
+        return card.getDescriptionBookPages();
+    }
+    
+    @Benchmark
+    public ItemStack descriptionBook() {
+        return card.getDescriptionBook();
+    }
+    
+    /**
+     * Reads the description back from an edited book.
+     * 
+     * @return Card with the new description.
+     */
+    @Benchmark
+    public CharacterCard setDescriptionFromBook() {
+        CharacterCard edited = card.copy();
+        edited.setDescriptionBookMeta(editedBook);
+        return edited;
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Trystan Cannon.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.trystancannon.charactercards.benchmark;
+
+import io.github.trystancannon.charactercards.card.CharacterCard;
+import io.github.trystancannon.charactercards.storage.CardFileFormat;
+import io.github.trystancannon.charactercards.storage.CardStore;
+import io.github.trystancannon.charactercards.storage.FileCardStore;
+import io.github.trystancannon.charactercards.storage.JournalCardStore;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loads every card from each storage backend, as when cards are imported
+ * from another storage: text files, binary files or the journal. Also opens
+ * each storage, which for the journal means replaying it to build its index,
+ * as on every server start.
+ * 
+ * The setup also prints how much disk space the cards take in each storage,
+ * both as the total length of the files and rounded up to whole file system
+ * blocks, which is what a file per card mostly costs.
+ * 
+ * By default the files were just written, so they're read from a warm page
+ * cache. With <code>-p cache=COLD</code> the page cache is dropped before
+ * every call, as after a reboot, which only works as root on Linux.
+ * 
+ * @author Trystan Cannon
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CardStoreLoadBenchmark {
+    /**
+     * Block size assumed when estimating the space the files take on disk,
+     * the default of most Linux file systems.
+     */
+    private static final long BLOCK_SIZE = 4096;
+    
+    /**
+     * TEXT or BINARY for a file per card, or JOURNAL.
+     */
+    @Param({"TEXT", "BINARY", "JOURNAL"})
+    public String storage;
+    
+    @Param({"10000", "100000"})
+    public int cardCount;
+    
+    /**
+     * WARM to read through the page cache, or COLD to read from the disk.
+     */
+    @Param({"WARM"})
+    public String cache;
+    
+    private Logger logger;
+    private File folder;
+    private CardStore store;
+    
+    @Setup
+    public void setUp() throws IOException {
+        BukkitStub.install();
+        
+        // CardLoader logs every load.
+        logger = Logger.getLogger(CardStoreLoadBenchmark.class.getName());
+        logger.setLevel(Level.WARNING);
+        
+        folder = Files.createTempDirectory("card-store-benchmark").toFile();
+        Random random = new Random(42);
+        
+        if (storage.equals("JOURNAL")) {
+            JournalCardStore journal = new JournalCardStore(new File(folder, "cards.journal"), logger);
+            journal.open();
+            
+            for (int i = 0; i < cardCount; i++) {
+                journal.save(SampleCards.newCard(new UUID(random.nextLong(), random.nextLong()), 256, random));
+            }
+            
+            journal.flush();
+            store = journal;
+        } else {
+            CardFileFormat format = CardFileFormat.valueOf(storage);
+            
+            // Written directly rather than through the store, which would
+            // sync every file.
+            for (int i = 0; i < cardCount; i++) {
+                CharacterCard card = SampleCards.newCard(new UUID(random.nextLong(), random.nextLong()), 256, random);
+                format.write(card, format.getFile(folder, card.getPlayerId()));
+            }
+            
+            store = new FileCardStore(folder, format, logger);
+        }
+        
+        printDiskUsage();
+    }
+    
+    private void printDiskUsage() {
+        long length = 0;
+        long allocated = 0;
+        int fileCount = 0;
+        
+        for (File file : folder.listFiles()) {
+            if (file.isFile()) {
+                length += file.length();
+                allocated += (file.length() + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+                fileCount++;
+            }
+        }
+        
+        System.out.printf("%s, %,d cards: %,d bytes in %,d files, %,d bytes in %,d byte blocks, %,d bytes per card%n",
+                storage, cardCount, length, fileCount, allocated, BLOCK_SIZE, length / cardCount);
+    }
+    
+    @TearDown
+    public void tearDown() throws IOException {
+        store.close();
+        
+        for (File file : folder.listFiles()) {
+            file.delete();
+        }
+        
+        folder.delete();
+    }
+    
+    /**
+     * Drops the page cache before a call when measuring a cold cache.
+     * 
+     * @throws IOException
+     * @throws InterruptedException 
+     */
+    @Setup(org.openjdk.jmh.annotations.Level.Invocation)
+    public void dropPageCache() throws IOException, InterruptedException {
+        if (!cache.equals("COLD")) {
+            return;
+        }
+        
+        Process drop = new ProcessBuilder("sh", "-c", "sync && echo 3 > /proc/sys/vm/drop_caches").inheritIO().start();
+        
+        if (drop.waitFor() != 0) {
+            throw new IllegalStateException("Couldn't drop the page cache. Measuring a cold cache needs root on Linux.");
+        }
+    }
+    
+    @Benchmark
+    public Map<UUID, CharacterCard> loadAll() throws IOException, InterruptedException {
+        return store.loadAll();
+    }
+    
+    @Benchmark
+    public CardStore open() throws IOException {
+        if (storage.equals("JOURNAL")) {
+            JournalCardStore journal = new JournalCardStore(new File(folder, "cards.journal"), logger);
+            journal.open();
+            journal.close();
+            return journal;
+        }
+        
+        return new FileCardStore(folder, CardFileFormat.valueOf(storage), logger);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Trystan Cannon.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.trystancannon.charactercards.benchmark;
+
+import io.github.trystancannon.charactercards.command.CardCommandExecutor;
+import io.github.trystancannon.charactercards.command.CardCommands;
+import io.github.trystancannon.charactercards.command.CommandArguments;
+
+import java.util.concurrent.TimeUnit;
+import org.bukkit.command.CommandSender;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Dispatches /card sub commands through <code>BaseCommandExecutor</code>.
+ * 
+ * The sender is the console, so each sub command only sends its usage, and
+ * the benchmark measures little besides the dispatch itself.
+ * 
+ * @author Trystan Cannon
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CommandDispatchBenchmark {
+    /**
+     * Sub command to dispatch: a name, an alias in another case, and one which
+     * doesn't exist.
+     */
+    @Param({"description", "DESC", "unknown"})
+    public String subCommand;
+    
+    private CardCommandExecutor baseExecutor;
+    private CommandSender sender;
+    private CommandArguments args;
+    
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        CardCommands.init(BukkitStub.newPlugin());
+        
+        baseExecutor = CardCommands.getCommand("card").getCardCommandExecutor();
+        sender = BukkitStub.newSender();
+        args = new CommandArguments(new String[] {subCommand, "Steve"}, 0);
+    }
+    
+    @Benchmark
+    public void dispatch() {
+        baseExecutor.execute(sender, args);
+    }
+}
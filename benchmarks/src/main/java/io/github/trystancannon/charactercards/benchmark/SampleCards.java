@@ -0,0 +1,75 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Trystan Cannon.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.trystancannon.charactercards.benchmark;
+
+import io.github.trystancannon.charactercards.card.CharacterCard;
+import io.github.trystancannon.charactercards.user.Gender;
+
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Builds cards with realistic contents for the benchmarks.
+ * 
+ * @author Trystan Cannon
+ */
+final class SampleCards {
+    private static final String[] WORDS = {
+        "the", "old", "knight", "rode", "north", "through", "rain", "and", "ash",
+        "carrying", "a", "letter", "sealed", "with", "wax", "from", "the", "queen"
+    };
+    
+    private SampleCards() {
+    }
+    
+    /**
+     * @param playerId
+     * @param descriptionLength Approximate length of the description, in characters.
+     * @param random
+     * @return Card with every field set.
+     */
+    static CharacterCard newCard(UUID playerId, int descriptionLength, Random random) {
+        return new CharacterCard(playerId, "Character " + random.nextInt(1000000), 18 + random.nextInt(60),
+                random.nextBoolean() ? Gender.MALE : Gender.FEMALE, "Human", newDescription(descriptionLength, random));
+    }
+    
+    /**
+     * @param length Approximate length, in characters.
+     * @param random
+     * @return Words separated by spaces, with a line break now and then.
+     */
+    static String newDescription(int length, Random random) {
+        StringBuilder description = new StringBuilder(length + 16);
+        
+        while (description.length() < length) {
+            if (description.length() > 0) {
+                description.append(random.nextInt(12) == 0 ? '\n' : ' ');
+            }
+            
+            description.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        
+        return description.toString();
+    }
+}
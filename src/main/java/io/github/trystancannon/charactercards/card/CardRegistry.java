@@ -0,0 +1,424 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Trystan Cannon.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.trystancannon.charactercards.card;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread-safe registry of the currently loaded <code>CharacterCard</code>
+ * objects.
+ * 
+ * Cards in the registry are never modified in place. An edit copies the card,
+ * applies the change to the copy and then swaps the copy in, so a card read
+ * from the registry can be used safely from any thread without locking.
+ * 
+ * Only some cards are kept in memory. The cards of online players are pinned
+ * and stay loaded until they're evicted when the player quits. Every other
+ * card is cached in a bounded least recently used list, and is dropped once
+ * the list is full and it hasn't been used for the longest. The registry never reads cards itself;
+ * a player whose card isn't resident has to be loaded from the card store and
+ * handed to <code>cache</code> or <code>pin</code>.
+ * 
+ * Reads never lock. A read of a cached card only stamps the time of the use
+ * on the card's entry, and the least recently used cards are worked out from
+ * the stamps when a change to the resident players has to evict some.
+ * 
+ * A resident player without a card is remembered as such, so looking up a
+ * player who has no card doesn't read the card store every time.
+ * 
+ * A reload publishes every reloaded card at once by swapping in a new map, so
+ * a reader sees either all of the old cards or all of the reloaded ones.
+ * 
+ * @author Trystan Cannon
+ */
+public final class CardRegistry {
+    /**
+     * An eviction drops this fraction of the capacity more than it has to.
+     */
+    private static final int EVICTION_SLACK_DIVISOR = 16;
+    
+    /**
+     * Resident cards keyed by the ids of the players who own them. Replaced
+     * as a whole by <code>reload</code>, while holding <code>lock</code>.
+     */
+    private volatile ConcurrentHashMap<UUID, CharacterCard> cards = new ConcurrentHashMap<>();
+    
+    /**
+     * Ids of the players whose cards are pinned.
+     */
+    private final Set<UUID> pinned = Collections.newSetFromMap(new ConcurrentHashMap<UUID, Boolean>());
+    
+    /**
+     * When the card of each resident player who isn't pinned was last used,
+     * keyed by the player's id.
+     */
+    private final ConcurrentHashMap<UUID, AccessStamp> unpinned = new ConcurrentHashMap<>();
+    
+    /**
+     * Guards every change to which players are resident, and to the cards.
+     */
+    private final Object lock = new Object();
+    
+    /**
+     * Maximum number of resident players who aren't pinned.
+     */
+    private int unpinnedCapacity;
+    
+    /**
+     * @param unpinnedCapacity Maximum number of cards kept in memory for
+     * players who aren't pinned.
+     */
+    public CardRegistry(int unpinnedCapacity) {
+        this.unpinnedCapacity = unpinnedCapacity;
+    }
+    
+    /**
+     * Changes how many cards of players who aren't pinned are kept in memory,
+     * dropping the least recently used ones if there are too many.
+     * 
+     * @param unpinnedCapacity 
+     */
+    public void setUnpinnedCapacity(int unpinnedCapacity) {
+        synchronized (lock) {
+            this.unpinnedCapacity = unpinnedCapacity;
+            evictOverflow();
+        }
+    }
+    
+    /**
+     * Retrieves the card of a resident player. Counts as a use of the card.
+     * 
+     * @param playerId
+     * @return Card of the player with the given id, or <code>null</code> if
+     * they don't have one or they aren't resident.
+     */
+    public CharacterCard get(UUID playerId) {
+        CharacterCard card = cards.get(playerId);
+        
+        if (card != null) {
+            touch(playerId);
+        }
+        
+        return card;
+    }
+    
+    /**
+     * @param playerId
+     * @return Whether the registry knows if the player has a card, i.e.
+     * whether <code>get</code> can be trusted for them.
+     */
+    public boolean isResident(UUID playerId) {
+        return pinned.contains(playerId) || unpinned.containsKey(playerId);
+    }
+    
+    /**
+     * @return Read-only view of every resident card.
+     */
+    public Collection<CharacterCard> getAll() {
+        return Collections.unmodifiableCollection(cards.values());
+    }
+    
+    /**
+     * @return Snapshot of the ids of every resident player.
+     */
+    public List<UUID> getResidentIds() {
+        synchronized (lock) {
+            List<UUID> residentIds = new ArrayList<>(pinned);
+            residentIds.addAll(unpinned.keySet());
+            return residentIds;
+        }
+    }
+    
+    /**
+     * @return Number of resident cards.
+     */
+    public int size() {
+        return cards.size();
+    }
+    
+    /**
+     * Makes a player resident with the card loaded for them, unless they
+     * already are, in which case the resident card wins since it may be newer.
+     * 
+     * @param playerId
+     * @param loaded Card read from the card store, or <code>null</code> if the
+     * player has none.
+     * @return The player's card, as now registered.
+     */
+    public CharacterCard cache(UUID playerId, CharacterCard loaded) {
+        synchronized (lock) {
+            if (pinned.contains(playerId) || unpinned.containsKey(playerId)) {
+                return get(playerId);
+            }
+            
+            if (loaded != null) {
+                cards.put(playerId, loaded);
+            }
+            
+            unpinned.put(playerId, new AccessStamp());
+            evictOverflow();
+            
+            return loaded;
+        }
+    }
+    
+    /**
+     * Keeps a player's card in memory until it is evicted. Like
+     * <code>cache</code>, the loaded card is only used if the player isn't
+     * resident yet.
+     * 
+     * @param playerId
+     * @param loaded Card read from the card store, or <code>null</code> if the
+     * player has none.
+     * @return The player's card, as now registered.
+     */
+    public CharacterCard pin(UUID playerId, CharacterCard loaded) {
+        synchronized (lock) {
+            if (unpinned.remove(playerId) == null && !pinned.contains(playerId) && loaded != null) {
+                cards.put(playerId, loaded);
+            }
+            
+            pinned.add(playerId);
+            return cards.get(playerId);
+        }
+    }
+    
+    /**
+     * Drops a player's card from memory, pinned or not.
+     * 
+     * @param playerId 
+     */
+    public void evict(UUID playerId) {
+        synchronized (lock) {
+            pinned.remove(playerId);
+            unpinned.remove(playerId);
+            cards.remove(playerId);
+        }
+    }
+    
+    /**
+     * Registers a new, empty card for the player with the given id. Replaces
+     * the player's existing card if they have one.
+     * 
+     * @param playerId
+     * @return Newly registered card.
+     */
+    public CharacterCard create(UUID playerId) {
+        CharacterCard card = new CharacterCard(playerId);
+        
+        synchronized (lock) {
+            cards.put(playerId, card);
+            
+            if (!pinned.contains(playerId)) {
+                addUnpinned(playerId);
+            }
+        }
+        
+        return card;
+    }
+    
+    /**
+     * Atomically applies an edit to the card of the resident player with the
+     * given id. A new card is created for the player if they don't have one yet.
+     * An edit which doesn't change the card leaves the current card in place.
+     * 
+     * @param playerId
+     * @param update
+     * @return The edited card, as now registered, or <code>null</code> if the
+     * player isn't resident and their card has to be loaded first.
+     */
+    public CharacterCard update(UUID playerId, CardUpdate update) {
+        while (true) {
+            if (!pinned.contains(playerId) && !touch(playerId)) {
+                return null;
+            }
+            
+            CharacterCard current = cards.get(playerId);
+            CharacterCard updated = current == null ? new CharacterCard(playerId) : current.copy();
+            
+            update.apply(updated);
+            
+            if (current != null && updated.getVersion() == current.getVersion()) {
+                // The edit didn't change anything, so keep the current card.
+                return current;
+            }
+            
+            // Published under the lock, so a reload swapping in a new map
+            // can't lose the edit.
+            synchronized (lock) {
+                if (!pinned.contains(playerId) && !unpinned.containsKey(playerId)) {
+                    // Dropped meanwhile; the next pass reports it.
+                    continue;
+                }
+                
+                if (cards.get(playerId) == current) {
+                    cards.put(playerId, updated);
+                    return updated;
+                }
+            }
+            
+            // Another edit won the race, or the card was reloaded.
+        }
+    }
+    
+    /**
+     * Unregisters the card of the player with the given id. The player stays
+     * resident, now known to have no card.
+     * 
+     * @param playerId
+     * @return The removed card, or <code>null</code> if there wasn't one.
+     */
+    public CharacterCard remove(UUID playerId) {
+        synchronized (lock) {
+            if (!pinned.contains(playerId)) {
+                addUnpinned(playerId);
+            }
+            
+            return cards.remove(playerId);
+        }
+    }
+    
+    /**
+     * Replaces the cards of every resident player at once with the ones freshly
+     * read from the card store. Players who stopped being resident since they
+     * were read are left out, and the players in <code>kept</code>, whose cards
+     * changed since, keep their current card, as does every player who became
+     * resident since.
+     * 
+     * @param reloaded Cards read from the card store, with <code>null</code>
+     * for the players who have none.
+     * @param kept Ids of the players whose current cards are newer than the
+     * reloaded ones.
+     */
+    public void reload(Map<UUID, CharacterCard> reloaded, Set<UUID> kept) {
+        synchronized (lock) {
+            ConcurrentHashMap<UUID, CharacterCard> replacement = new ConcurrentHashMap<>(cards);
+            
+            for (Map.Entry<UUID, CharacterCard> card : reloaded.entrySet()) {
+                UUID playerId = card.getKey();
+                
+                if (kept.contains(playerId) || (!pinned.contains(playerId) && !unpinned.containsKey(playerId))) {
+                    continue;
+                }
+                
+                if (card.getValue() != null) {
+                    replacement.put(playerId, card.getValue());
+                } else {
+                    replacement.remove(playerId);
+                }
+            }
+            
+            cards = replacement;
+        }
+    }
+    
+    /**
+     * Marks an unpinned player's card as just used. Doesn't lock.
+     * 
+     * @param playerId
+     * @return Whether the player is resident and unpinned.
+     */
+    private boolean touch(UUID playerId) {
+        AccessStamp stamp = unpinned.get(playerId);
+        
+        if (stamp == null) {
+            return false;
+        }
+        
+        stamp.touch();
+        return true;
+    }
+    
+    /**
+     * Makes a player resident without pinning them, or marks their card as
+     * just used if they already are. Must hold <code>lock</code>.
+     * 
+     * @param playerId 
+     */
+    private void addUnpinned(UUID playerId) {
+        if (!touch(playerId)) {
+            unpinned.put(playerId, new AccessStamp());
+            evictOverflow();
+        }
+    }
+    
+    /**
+     * Drops the least recently used cards of unpinned players until there are
+     * no more than the capacity. Must hold <code>lock</code>.
+     * 
+     * Finding them means looking at every stamp, so a few more cards than
+     * needed are dropped at once, and the next evictions are put off.
+     */
+    private void evictOverflow() {
+        int overflow = unpinned.size() - unpinnedCapacity;
+        
+        if (overflow <= 0) {
+            return;
+        }
+        
+        int evictCount = overflow + unpinnedCapacity / EVICTION_SLACK_DIVISOR;
+        
+        // Stamps are copied first, since reads keep changing them.
+        UUID[] playerIds = new UUID[unpinned.size()];
+        long[] lastUsed = new long[playerIds.length];
+        int count = 0;
+        
+        for (Map.Entry<UUID, AccessStamp> entry : unpinned.entrySet()) {
+            playerIds[count] = entry.getKey();
+            lastUsed[count] = entry.getValue().lastUsed;
+            count++;
+        }
+        
+        long[] sortedLastUsed = Arrays.copyOf(lastUsed, count);
+        Arrays.sort(sortedLastUsed);
+        long newestEvicted = sortedLastUsed[Math.min(evictCount, count) - 1];
+        
+        for (int index = 0; index < count && evictCount > 0; index++) {
+            if (lastUsed[index] <= newestEvicted) {
+                unpinned.remove(playerIds[index]);
+                cards.remove(playerIds[index]);
+                evictCount--;
+            }
+        }
+    }
+    
+    /**
+     * When a card was last used. Written by readers without locking.
+     */
+    private static final class AccessStamp {
+        private volatile long lastUsed = System.nanoTime();
+        
+        private void touch() {
+            lastUsed = System.nanoTime();
+        }
+    }
+}
@@ -25,11 +25,16 @@ package io.github.trystancannon.charactercards.card;
 
 import io.github.trystancannon.charactercards.user.Gender;
 
+import java.io.BufferedReader;
+import java.io.EOFException;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Scanner;
 import java.util.UUID;
@@ -39,6 +44,14 @@ import org.bukkit.inventory.ItemStack;
 import org.bukkit.inventory.meta.BookMeta;
 
 /**
+ * A player's character card.
+ * 
+ * Cards registered in a <code>CardRegistry</code> must not be modified in
+ * place; the setters are meant for copies handed to a <code>CardUpdate</code>.
+ * 
+ * Every setter which actually changes the card bumps its version, so a card
+ * knows whether it differs from what was last saved.
+ * 
  * @author Trystan Cannon
  */
 public final class CharacterCard {
@@ -54,13 +67,46 @@ public final class CharacterCard {
      */
     public static final String DESCRIPTION_BOOK_FILLER_PAGE = "Text goes here. You can delete me.";
     
+    /**
+     * Maximum number of characters on a page of the description book.
+     */
+    private static final int MAX_PAGE_LENGTH = 256;
+    
     private final UUID playerId;
     private String name;
     private int age;
     private Gender sex;
     private String race;
     
-    private ItemStack descBook;
+    /**
+     * Pages of the description, without the identifier page, as they appear
+     * in the description book. Never modified; replaced as a whole on edits.
+     */
+    private List<String> descriptionPages;
+    
+    /**
+     * The description pages joined together, kept alongside the pages so
+     * reading the description doesn't build it every time.
+     */
+    private String description;
+    
+    /**
+     * Number of changes made to the card, carried over to copies.
+     */
+    private long version;
+    
+    /**
+     * Version of the card last written to the card store, or -1 if it has
+     * never been saved. The only field updated on a registered card, once
+     * its write is done.
+     */
+    private volatile long savedVersion;
+    
+    /**
+     * Chat lines which show the card to a player, rendered on first use.
+     * Every change to the card clears them.
+     */
+    private volatile String[] viewLines;
     
     /**
      * The identifier page which makes the player's description book uniquely
@@ -70,17 +116,23 @@ public final class CharacterCard {
     
     public CharacterCard(UUID playerId) {
         this.playerId = playerId;
-        descBook = new ItemStack(Material.BOOK_AND_QUILL, 1);
         personalIdentifierPage = generatePersonalIdentifierPage(playerId);
         
-        // Initialize the book's metadata which identifies it as the player's
-        // description book.
-        BookMeta descBookMeta = (BookMeta) descBook.getItemMeta();
-        descBookMeta.setPages(personalIdentifierPage, DESCRIPTION_BOOK_FILLER_PAGE);
-        
-        descBook.setItemMeta(descBookMeta);
+        descriptionPages = Collections.emptyList();
+        description = "";
+        savedVersion = -1;
     }
     
+    /**
+     * Creates a card from its saved fields. The card starts out as saved.
+     * 
+     * @param playerId
+     * @param name
+     * @param age
+     * @param sex
+     * @param race
+     * @param description 
+     */    
     public CharacterCard(UUID playerId, String name, int age, Gender sex, String race, String description) {
         this.playerId = playerId;
         
@@ -89,31 +141,69 @@ public final class CharacterCard {
         this.sex = sex;
         this.race = race;
         
-        // Initialize the book's metadata which identifies it as the player's
-        // description book.
-        descBook = new ItemStack(Material.BOOK_AND_QUILL, 1);
         personalIdentifierPage = generatePersonalIdentifierPage(playerId);
         
-        BookMeta descBookMeta = (BookMeta) descBook.getItemMeta();
-        
-        // We have to split the pages into sections of 256 characters in length.
-        List<String> pages = splitByLength(description, 256);
-        // If there was a problem creating a description from the given text,
-        // then we'll have an empty array list to start.
-        if (pages == null) {
-            pages = new ArrayList<>();
-        }
-        
-        pages.add(0, personalIdentifierPage);
-        
-        descBookMeta.setPages(pages);
-        descBook.setItemMeta(descBookMeta);
+        descriptionPages = Collections.unmodifiableList(DescriptionLayout.paginate(description, MAX_PAGE_LENGTH));
+        this.description = description == null ? "" : description;
+    }
+    
+    /**
+     * Creates an independent copy of the given card.
+     * 
+     * @param original 
+     */
+    private CharacterCard(CharacterCard original) {
+        playerId = original.playerId;
+        name = original.name;
+        age = original.age;
+        sex = original.sex;
+        race = original.race;
+        descriptionPages = original.descriptionPages;
+        description = original.description;
+        personalIdentifierPage = original.personalIdentifierPage;
+        version = original.version;
+        savedVersion = original.savedVersion;
+    }
+    
+    /**
+     * @return Independent copy of this card, which can be edited without
+     * affecting this one.
+     */
+    public CharacterCard copy() {
+        return new CharacterCard(this);
     }
     
     private String generatePersonalIdentifierPage(UUID playerId) {
         return DESCRIPTION_BOOK_IDENTIFIER + " " + playerId;
     }
     
+    /**
+     * Reads the id of the player who owns a description book from the book's
+     * identifier page, i.e. its first page.
+     * 
+     * @param bookMeta
+     * @return Id of the book's owner, or <code>null</code> if the book doesn't
+     * have a valid identifier page.
+     */
+    public static UUID getDescriptionBookOwner(BookMeta bookMeta) {
+        if (bookMeta == null || bookMeta.getPageCount() < 1) {
+            return null;
+        }
+        
+        String identifierPage = bookMeta.getPage(1).trim();
+        int idStart = DESCRIPTION_BOOK_IDENTIFIER.length() + 1;
+        
+        if (identifierPage.length() <= idStart || !identifierPage.startsWith(DESCRIPTION_BOOK_IDENTIFIER) || identifierPage.charAt(idStart - 1) != ' ') {
+            return null;
+        }
+        
+        try {
+            return UUID.fromString(identifierPage.substring(idStart));
+        } catch (IllegalArgumentException malformedId) {
+            return null;
+        }
+    }
+    
     public UUID getPlayerId() {
         return playerId;
     }
@@ -123,7 +213,10 @@ public final class CharacterCard {
     }
     
     public void setName(String name) {
-        this.name = name;
+        if (!equal(this.name, name)) {
+            this.name = name;
+            changed();
+        }
     }
     
     public int getAge() {
@@ -131,7 +224,10 @@ public final class CharacterCard {
     }
     
     public void setAge(int age) {
-        this.age = age;
+        if (this.age != age) {
+            this.age = age;
+            changed();
+        }
     }
     
     public Gender getSex() {
@@ -139,14 +235,17 @@ public final class CharacterCard {
     }
     
     public void setSex(Gender sex) {
-        this.sex = sex;
+        if (!equal(this.sex, sex)) {
+            this.sex = sex;
+            changed();
+        }
     }
     
     public void setSex(String sex) {
         Gender _sex = Gender.parseSex(sex);
         
         if (_sex != null) {
-            this.sex = _sex;
+            setSex(_sex);
         }
     }
     
@@ -155,65 +254,244 @@ public final class CharacterCard {
     }
     
     public void setRace(String race) {
-        this.race = race;
+        if (!equal(this.race, race)) {
+            this.race = race;
+            changed();
+        }
     }
     
+    /**
+     * Creates a description book which can be handed to a player. A new book
+     * is made every time, since handing one out is the only use for it.
+     * 
+     * @return Description book.
+     */
     public ItemStack getDescriptionBook() {
-        BookMeta descBookMeta = getDescriptionBookMeta();
+        ItemStack descBook = new ItemStack(Material.BOOK_AND_QUILL, 1);
         
-        // If the book is signed, we'll have to update its metadata to remove the
-        // signature.
-        if (descBookMeta.hasAuthor() || descBookMeta.hasTitle() || descBookMeta.hasLore()) {
-            descBook = new ItemStack(Material.BOOK_AND_QUILL, 1);
-            
-            BookMeta fixedMeta = (BookMeta) descBook.getItemMeta();
-            fixedMeta.setPages(descBookMeta.getPages());
-            
-            descBook.setItemMeta(fixedMeta);
-        }
+        BookMeta descBookMeta = (BookMeta) descBook.getItemMeta();
+        descBookMeta.setPages(getDescriptionBookPages());
         
+        descBook.setItemMeta(descBookMeta);
         return descBook;
     }
     
-    public BookMeta getDescriptionBookMeta() {
-        return (BookMeta) descBook.getItemMeta();
+    /**
+     * @return Pages of the description book: the identifier page, then the
+     * description, or the filler page if there is no description yet.
+     */
+    public List<String> getDescriptionBookPages() {
+        List<String> pages = new ArrayList<>(descriptionPages.size() + 1);
+        pages.add(personalIdentifierPage);
+        
+        if (descriptionPages.isEmpty()) {
+            pages.add(DESCRIPTION_BOOK_FILLER_PAGE);
+        } else {
+            pages.addAll(descriptionPages);
+        }
+        
+        return pages;
     }
     
-    public String getDescription() {
-        String description = "";
-        BookMeta descBookMeta = getDescriptionBookMeta();
+    /**
+     * Replaces the description with the contents of the description book,
+     * e.g. after the player edited it.
+     * 
+     * If the book isn't this card's description book, or the player didn't
+     * write anything over the filler page, the description is cleared.
+     * 
+     * @param descBookMeta 
+     */
+    public void setDescriptionBookMeta(BookMeta descBookMeta) {
+        List<String> pages;
         
-        // Book pageIndex indexing starts at 1. Make sure it is actually
+        // Book page indexing starts at 1. Make sure it is actually
         // a description book. If the book hasn't been changed since its creation,
-        // then assume that the description has not changed, so we won't return anything.
+        // then assume that there's no description.
         if (descBookMeta.getPageCount() >= 2 && descBookMeta.getPage(1).equals(personalIdentifierPage) && !descBookMeta.getPage(2).equals(DESCRIPTION_BOOK_FILLER_PAGE)) {
-            for (int pageIndex = 2; pageIndex <= descBookMeta.getPageCount(); pageIndex++) {
-                ////////////////////////////////////////////////////////////////
-                /**
-                 * For some reason, when the page is read back from the book
-                 * meta, two new lines in a row appear as a single '\n' and the
-                 * black <cdoe>ChatColor</code>.
-                 * 
-                 * To fix this, simply, all instances of the black chat color are removed.
-                 */
-                ////////////////////////////////////////////////////////////////
-                description = description + descBookMeta.getPage(pageIndex).replaceAll(ChatColor.BLACK.toString(), "");
+            List<String> bookPages = descBookMeta.getPages();
+            pages = new ArrayList<>(bookPages.size() - 1);
+            
+            for (int pageIndex = 1; pageIndex < bookPages.size(); pageIndex++) {
+                pages.add(stripBlack(bookPages.get(pageIndex)));
             }
+        } else {
+            pages = Collections.emptyList();
         }
         
+        if (!pages.equals(descriptionPages)) {
+            setDescriptionPages(pages);
+        }
+    }
+    
+    /**
+     * @return Pages of the description, without the identifier page. Empty if
+     * there is no description. The list can't be modified.
+     */
+    public List<String> getDescriptionPages() {
+        return descriptionPages;
+    }
+    
+    /**
+     * @return The whole description, or an empty string if there is none.
+     */
+    public String getDescription() {
         return description;
     }
     
     public void addDescription(String description) {
-        BookMeta descBookMeta = getDescriptionBookMeta();
-        descBookMeta.addPage(description);
+        List<String> pages = new ArrayList<>(descriptionPages);
+        pages.add(description);
         
-        getDescriptionBook().setItemMeta(descBookMeta);
+        setDescriptionPages(pages);
+    }
+    
+    private void setDescriptionPages(List<String> pages) {
+        StringBuilder descriptionBuilder = new StringBuilder();
+        
+        for (String page : pages) {
+            descriptionBuilder.append(page);
+        }
+        
+        descriptionPages = Collections.unmodifiableList(pages);
+        description = descriptionBuilder.toString();
+        changed();
     }
     
     /**
-     * Saves the current character card to the given folder. The name of the
-     * file is the <code>UUID</code> which identifies the player.
+     * When a page is read back from a book, two new lines in a row appear as
+     * a single '\n' and the black <code>ChatColor</code>. To fix this, simply,
+     * all instances of the black chat color are removed.
+     * 
+     * @param page
+     * @return The page without black chat colors.
+     */
+    private static String stripBlack(String page) {
+        String black = ChatColor.BLACK.toString();
+        int blackIndex = page.indexOf(black);
+        
+        if (blackIndex < 0) {
+            return page;
+        }
+        
+        StringBuilder stripped = new StringBuilder(page.length());
+        int copiedUpTo = 0;
+        
+        while (blackIndex >= 0) {
+            stripped.append(page, copiedUpTo, blackIndex);
+            copiedUpTo = blackIndex + black.length();
+            blackIndex = page.indexOf(black, copiedUpTo);
+        }
+        
+        stripped.append(page, copiedUpTo, page.length());
+        return stripped.toString();
+    }
+    
+    /**
+     * Renders the card as chat lines for <code>/card view</code>: each field
+     * which has been set, then the description line by line. The header with
+     * the owner's name isn't included, since it changes with their display
+     * name.
+     * 
+     * The lines are rendered once and reused until the card changes. The
+     * array is shared, so it must not be modified.
+     * 
+     * @return Chat lines.
+     */
+    public String[] getViewLines() {
+        String[] lines = viewLines;
+        
+        if (lines == null) {
+            lines = renderViewLines();
+            viewLines = lines;
+        }
+        
+        return lines;
+    }
+    
+    private String[] renderViewLines() {
+        List<String> lines = new ArrayList<>();
+        
+        // Don't display information that hasn't yet been set.
+        if (name != null) {
+            lines.add(ChatColor.GOLD + "Name: " + ChatColor.WHITE + name);
+        }
+        
+        if (age > 1) {
+            lines.add(ChatColor.GOLD + "Age: " + ChatColor.WHITE + age);
+        }
+        
+        if (sex != null) {
+            lines.add(ChatColor.GOLD + "Sex: " + ChatColor.WHITE + sex);
+        }
+        
+        if (race != null) {
+            lines.add(ChatColor.GOLD + "Race: " + ChatColor.WHITE + race);
+        }
+        
+        if (!description.isEmpty()) {
+            lines.add(ChatColor.GOLD + "Description: " + ChatColor.RESET);
+            
+            int lineStart = 0;
+            
+            while (lineStart < description.length()) {
+                int lineEnd = description.indexOf('\n', lineStart);
+                
+                if (lineEnd < 0) {
+                    lineEnd = description.length();
+                }
+                
+                // Bukkit doesn't like sending empty lines, so we'll have to
+                // populate the empty lines with spaces so Bukkit has something
+                // to write.
+                lines.add(lineEnd > lineStart ? description.substring(lineStart, lineEnd) : " ");
+                lineStart = lineEnd + 1;
+            }
+        }
+        
+        return lines.toArray(new String[lines.size()]);
+    }
+    
+    /**
+     * @return Number of changes made to the card so far.
+     */
+    public long getVersion() {
+        return version;
+    }
+    
+    /**
+     * @return Whether the card has changes which haven't been saved yet.
+     */
+    public boolean isDirty() {
+        return savedVersion != version;
+    }
+    
+    /**
+     * Records that the given version of the card has been written to the
+     * card store and flushed.
+     * 
+     * @param version 
+     */
+    public void markSaved(long version) {
+        savedVersion = version;
+    }
+    
+    /**
+     * Records a change to the card.
+     */
+    private void changed() {
+        version++;
+        viewLines = null;
+    }
+    
+    private static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+    
+    /**
+     * Saves the current character card to the given file, replacing its
+     * contents. The file should be named after the <code>UUID</code> which
+     * identifies the player, with a .txt extension, for it to be read back.
      * 
      * Each file is saved as follows:
      * 
@@ -225,23 +503,11 @@ public final class CharacterCard {
      * description line 2
      * ...
      * 
-     * @param folderPath
-     * @return Save success or failure.
+     * @param file
+     * @throws IOException If the card couldn't be written.
      */
-    public boolean saveToFile(String folderPath) {
-        File file = new File(folderPath + "/" + playerId + ".txt");
-        
-        // Create the file if it doesn't exist.
-        try {
-            if (!file.exists() || file.isDirectory()) {
-                file.createNewFile();
-            }
-        } catch (IOException failure) {
-            return false;
-        }
-        
-        // Write the file.
-        try (PrintWriter writer = new PrintWriter(file.getAbsolutePath(), "UTF-8")) {
+    public void saveToFile(File file) throws IOException {
+        try (PrintWriter writer = new PrintWriter(file, "UTF-8")) {
             writer.println(name);
             writer.println(age);
             writer.println(race);
@@ -256,13 +522,11 @@ public final class CharacterCard {
             }
             descriptionScanner.close();
             
-            writer.flush();
-            writer.close();
-        } catch (Exception failure) {
-            return false;
+            // PrintWriter swallows write errors, so ask for them.
+            if (writer.checkError()) {
+                throw new IOException("Failed to write " + file + ".");
+            }
         }
-        
-        return true;
     }
     
     public static CharacterCard fromFile(File file) {
@@ -272,7 +536,7 @@ public final class CharacterCard {
             return null;
         }
         
-        try (Scanner fileScanner = new Scanner(file.toPath(), StandardCharsets.UTF_8.name())) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
             /**
              * File structure:
              * 
@@ -288,26 +552,25 @@ public final class CharacterCard {
              * If one of the string fields doesn't save, then we get: null
              * If the integer filed doesn't save, then we get: 0
              */
-            String name = fileScanner.nextLine();
-            int age = fileScanner.nextInt();
+            String name = readRequiredLine(reader);
+            int age = Integer.parseInt(readRequiredLine(reader).trim());
+            String race = readRequiredLine(reader);
+            String sexLine = readRequiredLine(reader);
+            // An unset sex is written as "null".
+            Gender sex = sexLine.equals("null") ? null : Gender.valueOf(sexLine);
             
-            // Reread the age as a line, so the saved race
-            // will be read from the next call to nextLine.
-            fileScanner.nextLine();
+            StringBuilder descriptionBuilder = new StringBuilder();
+            String line;
             
-            String race = fileScanner.nextLine();
-            Gender sex = Gender.parseSex(fileScanner.nextLine());
-            String description = "";
-            
-            while (fileScanner.hasNextLine()) {
-                description = description + fileScanner.nextLine() + "\n";
+            while ((line = reader.readLine()) != null) {
+                descriptionBuilder.append(line).append('\n');
             }
             
             // Strip the last \n character from the description.
-            if (description.length() > 0) {
-                description = description.substring(0, description.length() - 1);
-            } else {
-                description = null;
+            String description = null;
+            if (descriptionBuilder.length() > 0) {
+                descriptionBuilder.setLength(descriptionBuilder.length() - 1);
+                description = descriptionBuilder.toString();
             }
             
             // Double check that we've read everything properly.
@@ -322,7 +585,8 @@ public final class CharacterCard {
             // Make sure that we were able to properly load some fraction of information regarding
             // a player's card.
             if (!(name == null && age == 0 && sex == null && race == null && description == null)) {
-                card = new CharacterCard(UUID.fromString(file.getName().replaceAll(".txt", "")), name, age, sex, race, description);
+                String fileName = file.getName();
+                card = new CharacterCard(UUID.fromString(fileName.substring(0, fileName.length() - ".txt".length())), name, age, sex, race, description);
             }
         } catch (Exception failure) {
             failure.printStackTrace();
@@ -333,25 +597,19 @@ public final class CharacterCard {
     }
     
     /**
-     * Splits the given string into equal intervals of the given size.
+     * Reads the next line of a card file, which must exist.
      * 
-     * @param input
-     * @param length
-     * @return Sections of the given string in sections of the given length.
+     * @param reader
+     * @return Next line.
+     * @throws IOException If the file ends before the line.
      */
-    private List<String> splitByLength(String input, int length) {
-        if (input != null && length > 0) {
-            ArrayList<String> sections = new ArrayList<>();
-            
-            while (input.length() >= length) {
-                sections.add(input.substring(0, length));
-                input = input.substring(length, input.length());
-            }
-            sections.add(input);
-            
-            return sections;
+    private static String readRequiredLine(BufferedReader reader) throws IOException {
+        String line = reader.readLine();
+        
+        if (line == null) {
+            throw new EOFException("Card file ended unexpectedly.");
         }
         
-        return null;
+        return line;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,113 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Trystan Cannon.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.trystancannon.charactercards.card;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.bukkit.ChatColor;
+
+/**
+ * Lays out description text on the pages of a description book.
+ * 
+ * Pages break after a newline or a space where possible, so words aren't cut
+ * in half, and never inside a <code>ChatColor</code> code. Breaking doesn't
+ * add or drop any characters: the pages joined together are exactly the text.
+ * The text is read once, front to back, and each page is copied out once.
+ * 
+ * @author Trystan Cannon
+ */
+public final class DescriptionLayout {
+    private DescriptionLayout() {
+    }
+    
+    /**
+     * Splits text into book pages.
+     * 
+     * A page ends after the last newline in it if that newline is past the
+     * middle of the page, otherwise after the last space, otherwise after
+     * the last newline. A page without either is cut at the maximum length.
+     * 
+     * @param text
+     * @param maxPageLength Maximum number of characters on a page.
+     * @return Pages of the text; empty if there is no text.
+     */
+    public static List<String> paginate(String text, int maxPageLength) {
+        if (text == null || text.isEmpty()) {
+            return Collections.emptyList();
+        }
+        
+        List<String> pages = new ArrayList<>(text.length() / maxPageLength + 1);
+        int pageStart = 0;
+        // Positions just past the last newline and space on the current page,
+        // or -1 if there aren't any.
+        int lastNewlineEnd = -1;
+        int lastSpaceEnd = -1;
+        
+        for (int index = 0; index < text.length(); index++) {
+            if (index - pageStart == maxPageLength) {
+                int pageEnd;
+                
+                if (lastNewlineEnd > pageStart + maxPageLength / 2) {
+                    pageEnd = lastNewlineEnd;
+                } else if (lastSpaceEnd > pageStart) {
+                    pageEnd = lastSpaceEnd;
+                } else if (lastNewlineEnd > pageStart) {
+                    pageEnd = lastNewlineEnd;
+                } else {
+                    pageEnd = index;
+                    char last = text.charAt(pageEnd - 1);
+                    
+                    // Keep color codes and surrogate pairs together.
+                    if ((last == ChatColor.COLOR_CHAR || Character.isHighSurrogate(last)) && pageEnd - 1 > pageStart) {
+                        pageEnd--;
+                    }
+                }
+                
+                pages.add(text.substring(pageStart, pageEnd));
+                pageStart = pageEnd;
+                
+                // Breaks already seen past the new page start still count.
+                if (lastNewlineEnd <= pageStart) {
+                    lastNewlineEnd = -1;
+                }
+                
+                if (lastSpaceEnd <= pageStart) {
+                    lastSpaceEnd = -1;
+                }
+            }
+            
+            char character = text.charAt(index);
+            
+            if (character == '\n') {
+                lastNewlineEnd = index + 1;
+            } else if (character == ' ') {
+                lastSpaceEnd = index + 1;
+            }
+        }
+        
+        pages.add(text.substring(pageStart));
+        return pages;
+    }
+}
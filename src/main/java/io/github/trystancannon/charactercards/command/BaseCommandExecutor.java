@@ -25,7 +25,7 @@ package io.github.trystancannon.charactercards.command;
 
 import io.github.trystancannon.charactercards.core.CharacterCards;
 
-import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
@@ -37,9 +37,15 @@ import org.bukkit.entity.Player;
  * @author Trystan Cannon
  */
 public class BaseCommandExecutor extends CardCommandExecutor implements CommandExecutor {
+    
+    /**
+     * Number of /card commands naming a sub command which doesn't exist.
+     */
+    private final AtomicLong unknownSubCommands;
 
     public BaseCommandExecutor(CharacterCards plugin) {
         super(plugin);
+        unknownSubCommands = plugin.getMetrics().counter("cards_unknown_commands_total", "/card commands naming a sub command which doesn't exist.");
     }
 
     @Override
@@ -50,16 +56,7 @@ public class BaseCommandExecutor extends CardCommandExecutor implements CommandE
     public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
         if ((command.getName().equalsIgnoreCase("card") || command.getName().equalsIgnoreCase("c")) && sender instanceof Player) {
             if (args.length >= 1) {
-                String subCommandName = args[0];
-                
-                // Execute whatever sub command the user had in mind.
-                for (CardCommand subCommand : CardCommands.getSubCommandsForBaseExecutor(this)) {
-                    if (subCommand.getCommandName().equalsIgnoreCase(subCommandName)) {
-                        // Remove the name from the arguments.
-                        String[] modifiedArgs = Arrays.copyOfRange(args, 1, args.length);
-                        subCommand.getCardCommandExecutor().execute(sender, modifiedArgs);
-                    }
-                }
+                execute(sender, new CommandArguments(args, 0));
             }
             
             return true;
@@ -68,8 +65,30 @@ public class BaseCommandExecutor extends CardCommandExecutor implements CommandE
         return false;
     }
     
+    /**
+     * Executes whatever sub command the user had in mind, named by the first
+     * argument, with the rest of the arguments, and times it.
+     * 
+     * @param sender
+     * @param args 
+     */
     @Override
-    public void execute(CommandSender sender, String[] args) {
+    public void execute(CommandSender sender, CommandArguments args) {
+        if (args.length() >= 1) {
+            CardCommandExecutor subCommandExecutor = CardCommands.getSubCommandExecutor(args.get(0));
+            
+            if (subCommandExecutor != null) {
+                long start = System.nanoTime();
+                
+                try {
+                    subCommandExecutor.execute(sender, args.from(1));
+                } finally {
+                    CardCommands.getSubCommandTimer(args.get(0)).recordSince(start);
+                }
+            } else {
+                unknownSubCommands.incrementAndGet();
+            }
+        }
     }
     
     @Override
@@ -23,11 +23,11 @@
  */
 package io.github.trystancannon.charactercards.command;
 
+import io.github.trystancannon.charactercards.card.CardUpdate;
 import io.github.trystancannon.charactercards.card.CharacterCard;
 import io.github.trystancannon.charactercards.core.CharacterCards;
 
-import java.util.Arrays;
-import org.bukkit.Bukkit;
+import java.util.UUID;
 import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
@@ -61,7 +61,7 @@ public class CardAgeExecutor extends CardCommandExecutor implements CommandExecu
     @Override
     public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
         if (command.getName().equalsIgnoreCase("card") && args != null && args.length >= 1 && args[0].equalsIgnoreCase("age")) {
-            execute(sender, Arrays.copyOfRange(args, 1, args.length));
+            execute(sender, new CommandArguments(args, 1));
             return true;
         }
         
@@ -69,37 +69,44 @@ public class CardAgeExecutor extends CardCommandExecutor implements CommandExecu
     }
     
     @Override
-    public void execute(CommandSender sender, String[] args) {
-        if (sender instanceof Player && args.length >= 1) {
+    public void execute(CommandSender sender, CommandArguments args) {
+        if (sender instanceof Player && args.length() >= 1) {
             Player player = (Player) sender;
-            CharacterCard playerCard = CharacterCards.getCardForPlayer(player.getUniqueId());
-            CharacterCard card;
+            UUID cardOwnerId;
             int age;
             
-            // Set another player's age.
-            if (args.length >= 2 && player.hasPermission("cards.edit.other")) {
-                card = CharacterCards.getCardForPlayer(args[0]);
-                age = parseInt(args[1]);
+            // Set another player's age. They may be offline.
+            if (args.length() >= 2 && player.hasPermission("cards.edit.other")) {
+                cardOwnerId = CharacterCards.getPlayerId(args.get(0));
+                age = parseInt(args.get(1));
+                
+                if (cardOwnerId == null) {
+                    CharacterCards.sendLabeledMessage(sender, ChatColor.RED + "Could not find " + args.get(0) + ".");
+                    return;
+                }
             // Set player's own age.
             } else {
-                card = playerCard;
-                age = parseInt(args[0]);
+                cardOwnerId = player.getUniqueId();
+                age = parseInt(args.get(0));
             }
             
             if (age < 1) {
                 sendUsage(sender);
             } else {
-                if (card == null) {
-                    card = CharacterCards.createCardForPlayer(player.getUniqueId());
-                }
+                // A card is created for the player if there isn't one to edit.
+                final int newAge = age;
                 
-                card.setAge(age);
-                getPlugin().saveCard(card);
+                getPlugin().updateCard(cardOwnerId, new CardUpdate() {
+                    @Override
+                    public void apply(CharacterCard card) {
+                        card.setAge(newAge);
+                    }
+                });
                 
-                if (card == playerCard) {
+                if (cardOwnerId.equals(player.getUniqueId())) {
                     CharacterCards.sendLabeledMessage(sender, ChatColor.ITALIC + "Age set!");
                 } else {
-                    CharacterCards.sendLabeledMessage(sender, ChatColor.ITALIC + "Age for " + Bukkit.getPlayer(card.getPlayerId()).getDisplayName() + " set!");
+                    CharacterCards.sendLabeledMessage(sender, ChatColor.ITALIC + "Age for " + CharacterCards.getPlayerName(cardOwnerId) + " set!");
                 }
             }
         }
@@ -25,7 +25,6 @@ package io.github.trystancannon.charactercards.command;
 
 import io.github.trystancannon.charactercards.core.CharacterCards;
 
-import org.bukkit.World;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
@@ -70,7 +69,7 @@ public abstract class CardCommandExecutor implements CommandExecutor {
      * @param sender Sender of the command.
      * @param args The arguments with which the command will be executed.
      */
-    public abstract void execute(CommandSender sender, String[] args);
+    public abstract void execute(CommandSender sender, CommandArguments args);
     
     /**
      * Executes the command with the given arguments.
@@ -94,14 +93,17 @@ public abstract class CardCommandExecutor implements CommandExecutor {
      * @return Object for player with the given name.
      */
     public Player getOnlinePlayer(String name) {
-        for (World world : plugin.getServer().getWorlds()) {
-            for (Player player : world.getPlayers()) {
-                if (player.getName().equalsIgnoreCase(name) || player.getDisplayName().equalsIgnoreCase(name)) {
-                    return player;
-                }
-            }
-        }
-        
-        return null;
+        return CharacterCards.getOnlinePlayer(name);
+    }
+    
+    /**
+     * Like <code>getOnlinePlayer</code>, but a partial name will do if it only
+     * matches one online player. Only for commands which don't change cards.
+     * 
+     * @param name
+     * @return Object for the player matching the name.
+     */
+    public Player getOnlinePlayerByPrefix(String name) {
+        return CharacterCards.getOnlinePlayerByPrefix(name);
     }
 }
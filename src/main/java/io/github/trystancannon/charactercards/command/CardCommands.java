@@ -24,9 +24,15 @@
 package io.github.trystancannon.charactercards.command;
 
 import io.github.trystancannon.charactercards.core.CharacterCards;
+import io.github.trystancannon.charactercards.metrics.LatencyHistogram;
+import io.github.trystancannon.charactercards.metrics.PluginMetrics;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 /**
  * @author Trystan Cannon
@@ -35,38 +41,65 @@ public final class CardCommands {
     public static final List<CardCommand> commands = new ArrayList<>();
     private static boolean isInitialized = false;
     
+    /**
+     * Executors of the /card sub commands, keyed by lower case name or alias.
+     * Built once by <code>init</code> and never changed afterwards.
+     */
+    private static Map<String, CardCommandExecutor> subCommandExecutors = Collections.emptyMap();
+    
+    /**
+     * Timers of the /card sub commands, keyed like the executors. A sub
+     * command and its aliases share one timer.
+     */
+    private static Map<String, LatencyHistogram> subCommandTimers = Collections.emptyMap();
+    
     public static void init(CharacterCards plugin) {
         if (!isInitialized) {
             CardCommand baseCommand = new CardCommand("card", new BaseCommandExecutor(plugin));
             commands.add(baseCommand);
             
-            // Register commands and their executors.
-            baseCommand.addSubCommand(new CardCommand("card", new BaseCommandExecutor(plugin)));
-            baseCommand.addSubCommand(new CardCommand("age", new CardAgeExecutor(plugin)));
-            baseCommand.addSubCommand(new CardCommand("name", new CardNameExecutor(plugin)));
-            baseCommand.addSubCommand(new CardCommand("description", new CardDescriptionExecutor(plugin)));
-            baseCommand.addSubCommand(new CardCommand("race", new CardRaceExecutor(plugin)));
-            baseCommand.addSubCommand(new CardCommand("sex", new CardSexExecutor(plugin)));
-            baseCommand.addSubCommand(new CardCommand("reload", new CardReloadExecutor(plugin)));
-            baseCommand.addSubCommand(new CardCommand("view", new CardViewExecutor(plugin)));
-            baseCommand.addSubCommand(new CardCommand("delete", new CardDeleteExecutor(plugin)));
+            // Register commands, their executors and their aliases.
+            Map<String, CardCommandExecutor> executors = new HashMap<>();
+            Map<String, LatencyHistogram> timers = new HashMap<>();
+            PluginMetrics metrics = plugin.getMetrics();
             
-            // Register command aliases.
-            baseCommand.addSubCommand(new CardCommand("desc", getCommand("card").getSubCommand("description").getCardCommandExecutor()));
-            baseCommand.addSubCommand(new CardCommand("d", getCommand("card").getSubCommand("description").getCardCommandExecutor()));
-            baseCommand.addSubCommand(new CardCommand("a", getCommand("card").getSubCommand("age").getCardCommandExecutor()));
-            baseCommand.addSubCommand(new CardCommand("n", getCommand("card").getSubCommand("name").getCardCommandExecutor()));
-            baseCommand.addSubCommand(new CardCommand("r", getCommand("card").getSubCommand("race").getCardCommandExecutor()));
-            baseCommand.addSubCommand(new CardCommand("s", getCommand("card").getSubCommand("sex").getCardCommandExecutor()));
-            baseCommand.addSubCommand(new CardCommand("v", getCommand("card").getSubCommand("view").getCardCommandExecutor()));
-            baseCommand.addSubCommand(new CardCommand("re", getCommand("card").getSubCommand("reload").getCardCommandExecutor()));
-            baseCommand.addSubCommand(new CardCommand("de", getCommand("card").getSubCommand("delete").getCardCommandExecutor()));
-            baseCommand.addSubCommand(new CardCommand("del", getCommand("card").getSubCommand("delete").getCardCommandExecutor()));
+            addSubCommand(baseCommand, executors, timers, metrics, new CardAgeExecutor(plugin), "age", "a");
+            addSubCommand(baseCommand, executors, timers, metrics, new CardNameExecutor(plugin), "name", "n");
+            addSubCommand(baseCommand, executors, timers, metrics, new CardDescriptionExecutor(plugin), "description", "desc", "d");
+            addSubCommand(baseCommand, executors, timers, metrics, new CardRaceExecutor(plugin), "race", "r");
+            addSubCommand(baseCommand, executors, timers, metrics, new CardSexExecutor(plugin), "sex", "s");
+            addSubCommand(baseCommand, executors, timers, metrics, new CardReloadExecutor(plugin), "reload", "re");
+            addSubCommand(baseCommand, executors, timers, metrics, new CardViewExecutor(plugin), "view", "v");
+            addSubCommand(baseCommand, executors, timers, metrics, new CardDeleteExecutor(plugin), "delete", "de", "del");
+            addSubCommand(baseCommand, executors, timers, metrics, new CardStatsExecutor(plugin), "stats", "st");
             
+            subCommandExecutors = Collections.unmodifiableMap(executors);
+            subCommandTimers = Collections.unmodifiableMap(timers);
             isInitialized = true;
         }
     }
     
+    /**
+     * Registers a sub command under its name and each of its aliases, with a
+     * timer named after the sub command.
+     * 
+     * @param baseCommand
+     * @param executors Dispatch table being built.
+     * @param timers Timers being built.
+     * @param metrics
+     * @param executor
+     * @param names Name of the sub command, followed by its aliases.
+     */
+    private static void addSubCommand(CardCommand baseCommand, Map<String, CardCommandExecutor> executors, Map<String, LatencyHistogram> timers, PluginMetrics metrics, CardCommandExecutor executor, String... names) {
+        LatencyHistogram timer = metrics.histogram("cards_command_seconds", "Time taken by /card sub commands.", "command", names[0]);
+        
+        for (String name : names) {
+            baseCommand.addSubCommand(new CardCommand(name, executor));
+            executors.put(name.toLowerCase(Locale.ROOT), executor);
+            timers.put(name.toLowerCase(Locale.ROOT), timer);
+        }
+    }
+    
     public static CardCommand getCommand(String commandName) {
         for (CardCommand command : commands) {
             if (command.getCommandName().equals(commandName)) {
@@ -77,15 +110,25 @@ public final class CardCommands {
         return null;
     }
     
-    public static List<CardCommand> getSubCommandsForBaseExecutor(CardCommandExecutor baseExecutor) {
-        if (baseExecutor != null) {
-            for (CardCommand baseCommand : commands) {
-                if (baseCommand.getCardCommandExecutor().getClass().equals(baseExecutor.getClass())) {
-                    return baseCommand.getSubCommands();
-                }
-            }
-        }
-        
-        return null;
+    /**
+     * Looks up the executor of a /card sub command by name or alias,
+     * ignoring case.
+     * 
+     * @param subCommandName
+     * @return Executor of the sub command, or <code>null</code> if there is none.
+     */
+    public static CardCommandExecutor getSubCommandExecutor(String subCommandName) {
+        return subCommandExecutors.get(subCommandName.toLowerCase(Locale.ROOT));
+    }
+    
+    /**
+     * Looks up the timer of a /card sub command by name or alias, ignoring
+     * case.
+     * 
+     * @param subCommandName
+     * @return Timer of the sub command, or <code>null</code> if there is none.
+     */
+    public static LatencyHistogram getSubCommandTimer(String subCommandName) {
+        return subCommandTimers.get(subCommandName.toLowerCase(Locale.ROOT));
     }
 }
@@ -46,9 +46,9 @@ public class CardDeleteExecutor extends CardCommandExecutor {
     }
 
     @Override
-    public void execute(CommandSender sender, String[] args) {
+    public void execute(CommandSender sender, CommandArguments args) {
         // Player wants to delete their own character card:
-        if (args == null || args.length == 0) {
+        if (args.length() == 0) {
             if (sender instanceof Player) {
                 Player player = (Player) sender;
                 CharacterCard card = CharacterCards.getCardForPlayer(player.getUniqueId());
@@ -63,16 +63,16 @@ public class CardDeleteExecutor extends CardCommandExecutor {
             }
         // Player wants to delete the card of another player: Make sure they have
         // the right permissions to do so.
-        } else if (args.length > 0 && sender.hasPermission("cards.edit.other")) {
-            Player foreignPlayer = getOnlinePlayer(args[0]);
+        } else if (args.length() > 0 && sender.hasPermission("cards.edit.other")) {
+            Player foreignPlayer = getOnlinePlayer(args.get(0));
             
             if (foreignPlayer == null) {
-                CharacterCards.sendLabeledMessage(sender, ChatColor.RED + "Could not find " + args[0]);
+                CharacterCards.sendLabeledMessage(sender, ChatColor.RED + "Could not find " + args.get(0));
                 return;
             }
             
             getPlugin().deleteCard(foreignPlayer.getUniqueId());
-            CharacterCards.sendLabeledMessage(sender, ChatColor.ITALIC + "Deleted " + args[0] + "'s character card!");
+            CharacterCards.sendLabeledMessage(sender, ChatColor.ITALIC + "Deleted " + args.get(0) + "'s character card!");
         }
     }
 
@@ -23,8 +23,11 @@
  */
 package io.github.trystancannon.charactercards.command;
 
+import io.github.trystancannon.charactercards.card.CardCallback;
+import io.github.trystancannon.charactercards.card.CardUpdate;
 import io.github.trystancannon.charactercards.card.CharacterCard;
 import io.github.trystancannon.charactercards.core.CharacterCards;
+import io.github.trystancannon.charactercards.metrics.LatencyHistogram;
 
 import java.util.UUID;
 import org.bukkit.ChatColor;
@@ -46,9 +49,15 @@ import org.bukkit.inventory.meta.BookMeta;
 public class CardDescriptionExecutor extends CardCommandExecutor implements CommandExecutor, Listener {
 
     private Object ChatColors;
+    
+    /**
+     * How long handling an edited book takes.
+     */
+    private final LatencyHistogram bookEditTimer;
 
     public CardDescriptionExecutor(CharacterCards plugin) {
         super(plugin);
+        bookEditTimer = plugin.getMetrics().histogram("cards_book_edit_seconds", "Time taken to handle an edited book, which may be a description book.");
         plugin.getServer().getPluginManager().registerEvents(this, plugin);
     }
 
@@ -83,20 +92,44 @@ public class CardDescriptionExecutor extends CardCommandExecutor implements Comm
      */
     @EventHandler
     public void onPlayerEditBook(PlayerEditBookEvent editEvent) {
+        long start = System.nanoTime();
+        
+        try {
+            handleBookEdit(editEvent);
+        } finally {
+            bookEditTimer.recordSince(start);
+        }
+    }
+    
+    private void handleBookEdit(PlayerEditBookEvent editEvent) {
         Player editPlayer = editEvent.getPlayer();
         CharacterCard playerCard = CharacterCards.getCardForPlayer(editPlayer.getUniqueId());
-        CharacterCard card = CharacterCards.getCardForPlayer(editEvent.getPreviousBookMeta());
+        // The owner of a book may be offline, with their card no longer in
+        // memory, so go by the id on the book where possible.
+        UUID ownerId = CharacterCard.getDescriptionBookOwner(editEvent.getPreviousBookMeta());
+        
+        if (ownerId == null) {
+            CharacterCard card = CharacterCards.getCardForPlayer(editEvent.getPreviousBookMeta());
+            ownerId = card == null ? null : card.getPlayerId();
+        }
         
-        if (editPlayer.hasPermission("cards.edit.other") && card != null && card != playerCard) {
-            card.getDescriptionBook().setItemMeta(editEvent.getNewBookMeta());
-            getPlugin().saveCard(card);
-            CharacterCards.sendLabeledMessage(editPlayer, ChatColor.ITALIC + "Description for " + getPlugin().getServer().getPlayer(card.getPlayerId()).getDisplayName() + " set!");
+        final BookMeta newBookMeta = editEvent.getNewBookMeta();
+        CardUpdate descriptionUpdate = new CardUpdate() {
+            @Override
+            public void apply(CharacterCard card) {
+                card.setDescriptionBookMeta(newBookMeta);
+            }
+        };
+        
+        if (editPlayer.hasPermission("cards.edit.other") && ownerId != null && !ownerId.equals(editPlayer.getUniqueId())) {
+            getPlugin().updateCard(ownerId, descriptionUpdate);
+            CharacterCards.sendLabeledMessage(editPlayer, ChatColor.ITALIC + "Description for " + CharacterCards.getPlayerName(ownerId) + " set!");
             
             // Remove the book from the player's inventory.
             editPlayer.getInventory().setItemInHand(null);
-        } else if (playerCard != null) {
-            playerCard.getDescriptionBook().setItemMeta(editEvent.getNewBookMeta());
-            getPlugin().saveCard(card);
+        } else if (playerCard != null || editPlayer.getUniqueId().equals(ownerId)) {
+            // Creates the editor's card if signing their book is its first edit.
+            getPlugin().updateCard(editPlayer.getUniqueId(), descriptionUpdate);
             CharacterCards.sendLabeledMessage(editPlayer, ChatColor.ITALIC + "Description set!");
             
             // Remove the book from the player's inventory.
@@ -105,49 +138,80 @@ public class CardDescriptionExecutor extends CardCommandExecutor implements Comm
     }
 
     @Override
-    public void execute(CommandSender sender, String[] args) {
+    public void execute(CommandSender sender, CommandArguments args) {
         if (sender instanceof Player) {
-            Player player = (Player) sender;
-            UUID playerId = player.getUniqueId();
+            final Player player = (Player) sender;
+            final UUID playerId = player.getUniqueId();
             CharacterCard playerCard = CharacterCards.getCardForPlayer(playerId);
 
             // Edit another player's description:
-            if (args != null && args.length > 0 && player.hasPermission("cards.edit.other")) {
-                CharacterCard foreignPlayerCard = CharacterCards.getCardForPlayer(args[0]);
+            if (args.length() > 0 && player.hasPermission("cards.edit.other")) {
+                UUID foreignPlayerId = CharacterCards.getPlayerId(args.get(0));
+                final String requestedName = args.get(0);
 
-                if (foreignPlayerCard != null) {
-                    // Player passed themselves as the player to edit, do so with a recursive call.
-                    if (foreignPlayerCard.getPlayerId().equals(playerId)) {
-                        execute(sender, null);
-                        // Player truly would like to edit another player's description:
-                    } else {
-                        player.getInventory().addItem(foreignPlayerCard.getDescriptionBook());
-                    }
+                if (foreignPlayerId == null) {
+                    CharacterCards.sendLabeledMessage(sender, "You do not have permission to use this command, or the player " + requestedName + " does not have a character card.");
+                // Player passed themselves as the player to edit, do so with a recursive call.
+                } else if (foreignPlayerId.equals(playerId)) {
+                    execute(sender, CommandArguments.EMPTY);
+                // Player truly would like to edit another player's description,
+                // whose card may have to be read from disk first:
                 } else {
-                    CharacterCards.sendLabeledMessage(sender, "You do not have permission to use this command, or the player " + args[0] + " does not have a character card.");
+                    getPlugin().getCardForPlayerAsync(foreignPlayerId, new CardCallback() {
+                        @Override
+                        public void accept(CharacterCard foreignPlayerCard) {
+                            if (!player.isOnline()) {
+                                return;
+                            }
+                            
+                            if (foreignPlayerCard != null) {
+                                player.getInventory().addItem(foreignPlayerCard.getDescriptionBook());
+                            } else {
+                                CharacterCards.sendLabeledMessage(player, "You do not have permission to use this command, or the player " + requestedName + " does not have a character card.");
+                            }
+                        }
+                    });
                 }
 
                 // Edit your description:
             } else {
-                playerCard = playerCard == null ? CharacterCards.createCardForPlayer(playerId) : playerCard;
-
                 // Check if the player still has the book. If, so don't give them
-                // a new one.
+                // a new one. Their book is known by the id on its identifier
+                // page, which stays the same however much it is edited.
                 for (ItemStack stack : player.getInventory().getContents()) {
-                    if (stack != null && stack.getType() == Material.BOOK_AND_QUILL && ((BookMeta) stack.getItemMeta()).getPages().equals(playerCard.getDescriptionBookMeta().getPages())) {
+                    if (stack != null && stack.getType() == Material.BOOK_AND_QUILL && stack.hasItemMeta()
+                            && playerId.equals(CharacterCard.getDescriptionBookOwner((BookMeta) stack.getItemMeta()))) {
                         CharacterCards.sendLabeledMessage(sender, ChatColor.RED + "You still have your description book.");
                         return;
                     }
                 }
 
-                player.getInventory().addItem(playerCard.getDescriptionBook());
-                CharacterCards.sendLabeledMessage(sender, "Once you've finished editing your description, simply click 'Done.'");
+                if (playerCard != null) {
+                    giveDescriptionBook(player, playerCard);
+                    return;
+                }
+                
+                // The card may still be loading. A player without one gets a
+                // blank book; their card is created once they sign it.
+                getPlugin().getCardForPlayerAsync(playerId, new CardCallback() {
+                    @Override
+                    public void accept(CharacterCard loadedCard) {
+                        if (player.isOnline()) {
+                            giveDescriptionBook(player, loadedCard != null ? loadedCard : new CharacterCard(playerId));
+                        }
+                    }
+                });
             }
         } else {
             sendUsage(sender);
         }
     }
 
+    private static void giveDescriptionBook(Player player, CharacterCard card) {
+        player.getInventory().addItem(card.getDescriptionBook());
+        CharacterCards.sendLabeledMessage(player, "Once you've finished editing your description, simply click 'Done.'");
+    }
+
     @Override
     public void execute(String[] args) {
     }
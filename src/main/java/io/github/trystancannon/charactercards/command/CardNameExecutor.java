@@ -23,6 +23,7 @@
  */
 package io.github.trystancannon.charactercards.command;
 
+import io.github.trystancannon.charactercards.card.CardUpdate;
 import io.github.trystancannon.charactercards.card.CharacterCard;
 import io.github.trystancannon.charactercards.core.CharacterCards;
 
@@ -62,41 +63,37 @@ public class CardNameExecutor extends CardCommandExecutor implements CommandExec
     }
     
     @Override
-    public void execute(CommandSender sender, String[] args) {
-        if (sender instanceof Player && args != null && args.length >= 1) {
+    public void execute(CommandSender sender, CommandArguments args) {
+        if (sender instanceof Player && args.length() >= 1) {
             Player player = (Player) sender;
-            CharacterCard playerCard = CharacterCards.getCardForPlayer(player.getUniqueId());
-            CharacterCard card;
-            String name;
+            final String name;
             
             // Check if the player issuing the command wants to edit the name
             // of another player. If they do, make sure they have permission to do so.
-            if (args.length >= 2 && player.hasPermission("cards.edit.other")) {
-                Player foreignPlayer = getOnlinePlayer(args[0]);
+            if (args.length() >= 2 && player.hasPermission("cards.edit.other")) {
+                Player foreignPlayer = getOnlinePlayer(args.get(0));
                 
                 // Other player wasn't online.
                 if (foreignPlayer == null) {
-                    CharacterCards.sendLabeledMessage(sender, ChatColor.RED + "Could not find " + args[0] + ".");
+                    CharacterCards.sendLabeledMessage(sender, ChatColor.RED + "Could not find " + args.get(0) + ".");
                     return;
                 }
                 
                 player = foreignPlayer;
-                name = args[1];
-                card = CharacterCards.getCardForPlayer(foreignPlayer.getUniqueId());
+                name = args.get(1);
             } else {
-                card = playerCard;
-                name = args[0];
+                name = args.get(0);
             }
             
-            // Create a card for the player if they don't already have one.
-            if (card == null) {
-                card = CharacterCards.createCardForPlayer(player.getUniqueId());
-            }
-            
-            card.setName(name);
-            getPlugin().saveCard(card);
+            // A card is created for the player if they don't already have one.
+            getPlugin().updateCard(player.getUniqueId(), new CardUpdate() {
+                @Override
+                public void apply(CharacterCard card) {
+                    card.setName(name);
+                }
+            });
             
-            if (card == playerCard) {
+            if (player == sender) {
                 CharacterCards.sendLabeledMessage(sender, ChatColor.ITALIC + "Name set!");
             } else {
                 CharacterCards.sendLabeledMessage(sender, ChatColor.ITALIC + "Name for " + player.getDisplayName() + " set!");
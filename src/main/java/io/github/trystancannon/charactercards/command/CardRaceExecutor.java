@@ -23,6 +23,7 @@
  */
 package io.github.trystancannon.charactercards.command;
 
+import io.github.trystancannon.charactercards.card.CardUpdate;
 import io.github.trystancannon.charactercards.card.CharacterCard;
 import io.github.trystancannon.charactercards.core.CharacterCards;
 
@@ -61,37 +62,38 @@ public class CardRaceExecutor extends CardCommandExecutor implements CommandExec
     }
     
     @Override
-    public void execute(CommandSender sender, String[] args) {
-        if (sender instanceof Player && args != null && args.length >= 1) {
+    public void execute(CommandSender sender, CommandArguments args) {
+        if (sender instanceof Player && args.length() >= 1) {
             Player player = (Player) sender;
-            CharacterCard playerCard = CharacterCards.getCardForPlayer(player.getUniqueId());
-            CharacterCard card;
-            String race;
+            final String race;
             
             // Player wants to edit the race of another: Make sure they have the
             // proper permissions and number of arguments.
-            if (args.length >= 2 && player.hasPermission("cards.edit.other")) {
-                Player foreignPlayer = getOnlinePlayer(args[0]);
+            if (args.length() >= 2 && player.hasPermission("cards.edit.other")) {
+                Player foreignPlayer = getOnlinePlayer(args.get(0));
                 
                 // Player couldn't be found. Either, they were offline or have never been on this
                 // server.
                 if (foreignPlayer == null) {
-                    CharacterCards.sendLabeledMessage(sender, ChatColor.RED + "Could not find " + args[0] + ".");
+                    CharacterCards.sendLabeledMessage(sender, ChatColor.RED + "Could not find " + args.get(0) + ".");
                     return;
                 }
                 
-                card = CharacterCards.getCardForPlayer(foreignPlayer.getUniqueId());
-                race = args[1];
+                race = args.get(1);
                 player = foreignPlayer;
             } else {
-                card = playerCard;
-                race = args[0];
+                race = args.get(0);
             }
             
-            card.setRace(race);
-            getPlugin().saveCard(card);
+            // A card is created for the player if they don't already have one.
+            getPlugin().updateCard(player.getUniqueId(), new CardUpdate() {
+                @Override
+                public void apply(CharacterCard card) {
+                    card.setRace(race);
+                }
+            });
             
-            if (card == playerCard) {
+            if (player == sender) {
                 CharacterCards.sendLabeledMessage(sender, ChatColor.ITALIC + "Race set!");
             } else {
                 CharacterCards.sendLabeledMessage(sender, ChatColor.ITALIC + "Race for " + player.getDisplayName() + " set!");
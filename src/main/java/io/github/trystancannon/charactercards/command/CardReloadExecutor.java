@@ -25,6 +25,7 @@ package io.github.trystancannon.charactercards.command;
 
 import io.github.trystancannon.charactercards.core.CharacterCards;
 
+import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
 
@@ -57,11 +58,23 @@ public class CardReloadExecutor extends CardCommandExecutor {
     }
     
     @Override
-    public void execute(CommandSender sender, String[] args) {
+    public void execute(CommandSender sender, CommandArguments args) {
         if (sender.hasPermission("cards.reload")) {
-            CharacterCards.sendLabeledMessage(sender, "Reloading character cards...");
-            getPlugin().reloadCards();
-            CharacterCards.sendLabeledMessage(sender, "Card reload complete!");
+            final CommandSender reloadRequester = sender;
+            
+            // The cards are read in the background, so report back once they're in place.
+            boolean reloadStarted = getPlugin().reloadCardsAsync(new Runnable() {
+                @Override
+                public void run() {
+                    CharacterCards.sendLabeledMessage(reloadRequester, "Card reload complete!");
+                }
+            });
+            
+            if (reloadStarted) {
+                CharacterCards.sendLabeledMessage(sender, "Reloading character cards...");
+            } else {
+                CharacterCards.sendLabeledMessage(sender, ChatColor.RED + "Cards are already being reloaded.");
+            }
         }
     }
     
@@ -23,6 +23,7 @@
  */
 package io.github.trystancannon.charactercards.command;
 
+import io.github.trystancannon.charactercards.card.CardUpdate;
 import io.github.trystancannon.charactercards.card.CharacterCard;
 import io.github.trystancannon.charactercards.core.CharacterCards;
 import io.github.trystancannon.charactercards.user.Gender;
@@ -62,42 +63,38 @@ public class CardSexExecutor extends CardCommandExecutor implements CommandExecu
     }
     
     @Override
-    public void execute(CommandSender sender, String[] args) {
-        if (sender instanceof Player && args != null && args.length >= 1) {
+    public void execute(CommandSender sender, CommandArguments args) {
+        if (sender instanceof Player && args.length() >= 1) {
             Player player = (Player) sender;
-            CharacterCard playerCard = CharacterCards.getCardForPlayer(player.getUniqueId());
-            CharacterCard card;
             String sex;
             
             // Player wants to edit the sex of another: Make sure they have the
             // right arguments and permissions to do so.
-            if (args.length >= 2 && player.hasPermission("cards.edit.other")) {
-                Player foreignPlayer = getOnlinePlayer(args[0]);
+            if (args.length() >= 2 && player.hasPermission("cards.edit.other")) {
+                Player foreignPlayer = getOnlinePlayer(args.get(0));
                 
                 if (foreignPlayer == null) {
-                    CharacterCards.sendLabeledMessage(sender, ChatColor.RED + "Could not find " + args[0] + ".");
+                    CharacterCards.sendLabeledMessage(sender, ChatColor.RED + "Could not find " + args.get(0) + ".");
                     return;
                 }
                 
                 player = foreignPlayer;
-                sex = args[1];
-                card = CharacterCards.getCardForPlayer(foreignPlayer.getUniqueId());
+                sex = args.get(1);
             } else {
-                card = playerCard;
-                sex = args[0];
+                sex = args.get(0);
             }
             
-            // Create a card for the player if they don't already have one.
-            if (card == null) {
-                card = CharacterCards.createCardForPlayer(player.getUniqueId());
-            }
-            
-            Gender gender = Gender.parseSex(sex);
+            final Gender gender = Gender.parseSex(sex);
             if (gender != null) {
-                card.setSex(Gender.parseSex(sex));
-                getPlugin().saveCard(card);
+                // A card is created for the player if they don't already have one.
+                getPlugin().updateCard(player.getUniqueId(), new CardUpdate() {
+                    @Override
+                    public void apply(CharacterCard card) {
+                        card.setSex(gender);
+                    }
+                });
                 
-                if (card == playerCard) {
+                if (player == sender) {
                     CharacterCards.sendLabeledMessage(sender, ChatColor.ITALIC + "Sex set!");
                 } else {
                     CharacterCards.sendLabeledMessage(sender, ChatColor.ITALIC + "Sex for " + player.getDisplayName() + " set!");
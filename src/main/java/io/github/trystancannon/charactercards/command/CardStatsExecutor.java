@@ -0,0 +1,98 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Trystan Cannon.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.trystancannon.charactercards.command;
+
+import io.github.trystancannon.charactercards.core.CharacterCards;
+import io.github.trystancannon.charactercards.metrics.LatencyHistogram;
+import io.github.trystancannon.charactercards.storage.CardSaveQueue;
+
+import java.util.Map;
+import org.bukkit.ChatColor;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandSender;
+
+/**
+ * Shows what the plugin is costing: the save queue, and how long commands,
+ * events and writes take.
+ * 
+ * @author Trystan Cannon
+ */
+public class CardStatsExecutor extends CardCommandExecutor {
+
+    public CardStatsExecutor(CharacterCards plugin) {
+        super(plugin);
+    }
+
+    @Override
+    public void sendUsage(CommandSender receiver) {
+        CharacterCards.sendLabeledMessage(receiver, ChatColor.RED + "Usage: /card stats");
+    }
+    
+    /**
+     * Executes the /card stats command.
+     * 
+     * @param sender
+     * @param command
+     * @param label
+     * @param args 
+     * @return Command was executed.
+     */
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        return false;
+    }
+    
+    @Override
+    public void execute(CommandSender sender, CommandArguments args) {
+        if (!sender.hasPermission("cards.stats")) {
+            CharacterCards.sendLabeledMessage(sender, ChatColor.RED + "You do not have permission to use this command.");
+            return;
+        }
+        
+        CardSaveQueue saveQueue = getPlugin().getSaveQueue();
+        
+        CharacterCards.sendLabeledMessage(sender, "Cards in memory: " + CharacterCards.getResidentCardCount());
+        sender.sendMessage(ChatColor.GOLD + "Save queue: " + ChatColor.WHITE + saveQueue.getBacklog() + " waiting, "
+                + saveQueue.getRetryBacklog() + " being retried. Last save: " + saveQueue.getLastFlushWrites() + " cards in " + saveQueue.getLastFlushMillis() + " ms.");
+        sender.sendMessage(ChatColor.GOLD + "Writes: " + ChatColor.WHITE + saveQueue.getCompletedWrites() + " done, "
+                + saveQueue.getSkippedWrites() + " skipped, " + saveQueue.getFailedWrites() + " failed.");
+        sender.sendMessage(ChatColor.GOLD + "Timings " + ChatColor.GRAY + "(count, mean, 99th percentile)" + ChatColor.GOLD + ":");
+        
+        for (Map.Entry<String, LatencyHistogram> timer : getPlugin().getMetrics().getHistograms().entrySet()) {
+            LatencyHistogram histogram = timer.getValue();
+            
+            // Nothing to say about what never happened.
+            if (histogram.getCount() == 0) {
+                continue;
+            }
+            
+            sender.sendMessage(ChatColor.AQUA + "  " + timer.getKey() + ": " + ChatColor.WHITE + histogram.getCount() + ", "
+                    + LatencyHistogram.format(histogram.getMeanNanos()) + ", < " + LatencyHistogram.format(histogram.getPercentileNanos(99)));
+        }
+    }
+    
+    @Override
+    public void execute(String[] args) {
+    }
+}
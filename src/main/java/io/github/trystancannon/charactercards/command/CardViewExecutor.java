@@ -23,10 +23,11 @@
  */
 package io.github.trystancannon.charactercards.command;
 
+import io.github.trystancannon.charactercards.card.CardCallback;
 import io.github.trystancannon.charactercards.card.CharacterCard;
 import io.github.trystancannon.charactercards.core.CharacterCards;
+import io.github.trystancannon.charactercards.metrics.LatencyHistogram;
 
-import java.util.Scanner;
 import java.util.UUID;
 import org.bukkit.ChatColor;
 import org.bukkit.Material;
@@ -42,8 +43,20 @@ import org.bukkit.event.player.PlayerInteractEntityEvent;
  */
 public class CardViewExecutor extends CardCommandExecutor implements Listener {
 
+    /**
+     * Keeps players holding right-click from flooding their chat with cards.
+     */
+    private final ViewThrottle viewThrottle;
+    
+    /**
+     * How long handling a right-click on a player takes.
+     */
+    private final LatencyHistogram rightClickTimer;
+
     public CardViewExecutor(CharacterCards plugin) {
         super(plugin);
+        viewThrottle = new ViewThrottle(plugin.getConfig().getLong("viewing.cooldown-millis", 500), plugin.getConfig().getLong("viewing.duplicate-window-millis", 10000));
+        rightClickTimer = plugin.getMetrics().histogram("cards_view_click_seconds", "Time taken to handle a right-click on a player, which may show their card.");
         plugin.getServer().getPluginManager().registerEvents(this, plugin);
     }
 
@@ -71,75 +84,77 @@ public class CardViewExecutor extends CardCommandExecutor implements Listener {
         Player player = interaction.getPlayer();
 
         if (player.getItemInHand().getType() == Material.AIR && interaction.getRightClicked() instanceof Player) {
+            long start = System.nanoTime();
             Player playerClicked = (Player) interaction.getRightClicked();
-
-            if (CharacterCards.getCardForPlayer(playerClicked.getUniqueId()) != null) {
-                playerViewCard(player, playerClicked.getUniqueId());
-            } else {
-                CharacterCards.sendLabeledMessage(player, ChatColor.RED + "Player " + playerClicked.getDisplayName() + " does not have a character card.");
+            CharacterCard clickedCard = CharacterCards.getCardForPlayer(playerClicked.getUniqueId());
+            
+            if (viewThrottle.tryView(player.getEntityId(), playerClicked.getEntityId(), clickedCard, System.currentTimeMillis())) {
+                if (clickedCard != null) {
+                    playerViewCard(player, playerClicked.getUniqueId(), clickedCard);
+                } else {
+                    CharacterCards.sendLabeledMessage(player, ChatColor.RED + "Player " + playerClicked.getDisplayName() + " does not have a character card.");
+                }
             }
+            
+            rightClickTimer.recordSince(start);
         }
     }
 
     public void playerViewCard(Player playerViewing, UUID cardId) {
-        CharacterCard playerCard = CharacterCards.getCardForPlayer(cardId);
-        String viewLabel = getPlugin().getServer().getPlayer(cardId).getDisplayName() + "'s Character Card";
+        playerViewCard(playerViewing, cardId, CharacterCards.getCardForPlayer(cardId));
+    }
+
+    private void playerViewCard(Player playerViewing, UUID cardId, CharacterCard playerCard) {
+        String viewLabel = CharacterCards.getPlayerName(cardId) + "'s Character Card";
 
         playerViewing.sendMessage(ChatColor.GOLD + "--- " + ChatColor.AQUA + viewLabel + ChatColor.GOLD + " ---");
-        ////////////////////////////////////////////////////////////////
-        // Don't display information that hasn't yet been set.
+        
+        // The card's lines are only rendered again after it changes.
         if (playerCard != null) {
-            if (playerCard.getName() != null) {
-                playerViewing.sendMessage(ChatColor.GOLD + "Name: " + ChatColor.WHITE + playerCard.getName());
-            }
-
-            if (playerCard.getAge() > 1) {
-                playerViewing.sendMessage(ChatColor.GOLD + "Age: " + ChatColor.WHITE + playerCard.getAge());
-            }
-
-            if (playerCard.getSex() != null) {
-                playerViewing.sendMessage(ChatColor.GOLD + "Sex: " + ChatColor.WHITE + playerCard.getSex());
-            }
-
-            if (playerCard.getRace() != null) {
-                playerViewing.sendMessage(ChatColor.GOLD + "Race: " + ChatColor.WHITE + playerCard.getRace());
-            }
-
-            if (playerCard.getDescription().length() > 0) {
-                playerViewing.sendMessage(ChatColor.GOLD + "Description: " + ChatColor.RESET);
-                
-                /**
-                 * Bukkit doesn't like sending empty lines, so we'll have to populate
-                 * the empty lines with spaces so Bukkit has something to write.
-                 */
-                Scanner descriptionScanner = new Scanner(playerCard.getDescription());
-                while (descriptionScanner.hasNextLine()) {
-                    String line = descriptionScanner.nextLine();
-                    line = line.length() > 0 ? line : " ";
-                    
-                    playerViewing.sendMessage(line);
-                }
-            }
+            playerViewing.sendMessage(playerCard.getViewLines());
         }
     }
 
     @Override
-    public void execute(CommandSender sender, String[] args) {
+    public void execute(CommandSender sender, CommandArguments args) {
         if (sender instanceof Player) {
-            Player player = (Player) sender;
+            final Player player = (Player) sender;
             
             // One or more arguments? Assume the player wants to view the card
             // of another player.
-            if (args.length >= 1) {
-                Player playerToView = getOnlinePlayer(args[0]);
-                CharacterCard playerCard;
+            if (args.length() >= 1) {
+                Player playerToView = getOnlinePlayer(args.get(0));
+                UUID playerId = playerToView == null ? CharacterCards.getPlayerId(args.get(0)) : playerToView.getUniqueId();
+                
+                // Viewing is harmless, so a partial name of an online player
+                // will do, once no full name matches.
+                if (playerId == null && (playerToView = getOnlinePlayerByPrefix(args.get(0))) != null) {
+                    playerId = playerToView.getUniqueId();
+                }
+                
+                final UUID cardId = playerId;
+                final String requestedName = args.get(0);
 
-                if (playerToView == null && CharacterCards.getCardForPlayer(args[0]) == null) {
-                    CharacterCards.sendLabeledMessage(sender, ChatColor.RED + "Player " + args[0] + " does not have a character card.");
-                } else {
-                    playerCard = playerToView == null ? CharacterCards.getCardForPlayer(args[0]) : CharacterCards.getCardForPlayer(playerToView.getUniqueId());
-                    playerViewCard((Player) sender, playerCard.getPlayerId());
+                if (cardId == null) {
+                    CharacterCards.sendLabeledMessage(sender, ChatColor.RED + "Player " + requestedName + " does not have a character card.");
+                    return;
                 }
+                
+                // Offline players' cards may have to be read from disk first.
+                getPlugin().getCardForPlayerAsync(cardId, new CardCallback() {
+                    @Override
+                    public void accept(CharacterCard card) {
+                        if (!player.isOnline()) {
+                            return;
+                        }
+                        
+                        if (card == null) {
+                            CharacterCards.sendLabeledMessage(player, ChatColor.RED + "Player " + requestedName + " does not have a character card.");
+                        } else {
+                            playerViewCard(player, cardId, card);
+                        }
+                    }
+                });
             // If there was no name passed, assume that the player wants to view their own card.
             } else if (CharacterCards.getCardForPlayer(player.getUniqueId()) != null) {
                 playerViewCard(player, player.getUniqueId());
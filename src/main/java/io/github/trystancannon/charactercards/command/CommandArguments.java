@@ -0,0 +1,76 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Trystan Cannon.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.trystancannon.charactercards.command;
+
+/**
+ * Read-only view of a command's arguments which starts part way into the
+ * array Bukkit passed in, e.g. past the sub command name, without copying it.
+ * 
+ * @author Trystan Cannon
+ */
+public final class CommandArguments {
+    /**
+     * No arguments at all.
+     */
+    public static final CommandArguments EMPTY = new CommandArguments(new String[0], 0);
+    
+    private final String[] args;
+    private final int offset;
+    
+    /**
+     * @param args All of the command's arguments.
+     * @param offset Index of the first argument in the view.
+     */
+    public CommandArguments(String[] args, int offset) {
+        this.args = args;
+        this.offset = Math.min(offset, args.length);
+    }
+    
+    /**
+     * @return Number of arguments in the view.
+     */
+    public int length() {
+        return args.length - offset;
+    }
+    
+    /**
+     * @param start Index within this view of the first argument to keep.
+     * @return View of the arguments from the given one on.
+     */
+    public CommandArguments from(int start) {
+        return new CommandArguments(args, offset + start);
+    }
+    
+    /**
+     * @param index Index within the view.
+     * @return The argument.
+     */
+    public String get(int index) {
+        if (index < 0 || index >= length()) {
+            throw new IndexOutOfBoundsException("Argument " + index + " of " + length());
+        }
+        
+        return args[offset + index];
+    }
+}
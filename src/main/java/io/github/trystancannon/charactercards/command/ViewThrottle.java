@@ -0,0 +1,200 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Trystan Cannon.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.trystancannon.charactercards.command;
+
+import java.util.Arrays;
+
+/**
+ * Limits how often a player can view cards by right-clicking other players.
+ * 
+ * A viewer has to wait out a cooldown between any two views, and viewing the
+ * same, unchanged card again is suppressed for a longer window, so holding
+ * right-click doesn't flood their chat.
+ * 
+ * Only the viewer's last view is remembered, in an open addressing hash
+ * table of parallel arrays keyed by the viewer's entity id. Entries expire
+ * once both windows have passed and are dropped whenever the table is
+ * rebuilt, so it stays as small as the number of recent viewers. Only used
+ * from the main thread.
+ * 
+ * @author Trystan Cannon
+ */
+public final class ViewThrottle {
+    /**
+     * Marks an empty slot. Entity ids are never negative.
+     */
+    private static final int EMPTY = -1;
+    
+    private static final int MIN_CAPACITY = 16;
+    
+    private final long cooldownMillis;
+    private final long duplicateWindowMillis;
+    
+    /**
+     * Entity ids of the viewers, or <code>EMPTY</code>.
+     */
+    private int[] viewers;
+    
+    /**
+     * Entity id of the player whose card each viewer saw last.
+     */
+    private int[] targets;
+    
+    /**
+     * The card each viewer saw last. Cards are replaced, never modified, when
+     * they change, so a different card means different content.
+     */
+    private Object[] cards;
+    
+    /**
+     * When each viewer last saw a card.
+     */
+    private long[] viewTimes;
+    
+    /**
+     * Number of occupied slots, expired or not.
+     */
+    private int size;
+    
+    /**
+     * @param cooldownMillis Minimum time between two views by the same player.
+     * @param duplicateWindowMillis Time during which viewing the same card
+     * again, unchanged, is suppressed.
+     */
+    public ViewThrottle(long cooldownMillis, long duplicateWindowMillis) {
+        this.cooldownMillis = cooldownMillis;
+        this.duplicateWindowMillis = duplicateWindowMillis;
+        allocate(MIN_CAPACITY);
+    }
+    
+    /**
+     * Decides whether a view may go ahead, and remembers it if so.
+     * 
+     * @param viewerId Entity id of the viewing player.
+     * @param targetId Entity id of the player whose card would be shown.
+     * @param card The card which would be shown.
+     * @param now Current time in milliseconds.
+     * @return Whether to show the card.
+     */
+    public boolean tryView(int viewerId, int targetId, Object card, long now) {
+        int slot = findSlot(viewers, viewerId);
+        
+        if (viewers[slot] == viewerId) {
+            long elapsed = now - viewTimes[slot];
+            
+            if (elapsed < cooldownMillis) {
+                return false;
+            }
+            
+            if (elapsed < duplicateWindowMillis && targets[slot] == targetId && cards[slot] == card) {
+                return false;
+            }
+        } else {
+            // Keep the table at most half full so probes stay short.
+            if ((size + 1) * 2 > viewers.length) {
+                rebuild(now);
+                slot = findSlot(viewers, viewerId);
+            }
+            
+            viewers[slot] = viewerId;
+            size++;
+        }
+        
+        targets[slot] = targetId;
+        cards[slot] = card;
+        viewTimes[slot] = now;
+        
+        return true;
+    }
+    
+    /**
+     * Copies the unexpired entries into a table sized for them.
+     * 
+     * @param now 
+     */
+    private void rebuild(long now) {
+        int[] oldViewers = viewers;
+        int[] oldTargets = targets;
+        Object[] oldCards = cards;
+        long[] oldViewTimes = viewTimes;
+        long retentionMillis = Math.max(cooldownMillis, duplicateWindowMillis);
+        int live = 0;
+        
+        for (int slot = 0; slot < oldViewers.length; slot++) {
+            if (oldViewers[slot] != EMPTY && now - oldViewTimes[slot] < retentionMillis) {
+                live++;
+            }
+        }
+        
+        // Room for the live entries plus as many new ones before the next rebuild.
+        int capacity = MIN_CAPACITY;
+        while (capacity < live * 4) {
+            capacity *= 2;
+        }
+        
+        allocate(capacity);
+        
+        for (int oldSlot = 0; oldSlot < oldViewers.length; oldSlot++) {
+            if (oldViewers[oldSlot] != EMPTY && now - oldViewTimes[oldSlot] < retentionMillis) {
+                int slot = findSlot(viewers, oldViewers[oldSlot]);
+                
+                viewers[slot] = oldViewers[oldSlot];
+                targets[slot] = oldTargets[oldSlot];
+                cards[slot] = oldCards[oldSlot];
+                viewTimes[slot] = oldViewTimes[oldSlot];
+                size++;
+            }
+        }
+    }
+    
+    private void allocate(int capacity) {
+        viewers = new int[capacity];
+        Arrays.fill(viewers, EMPTY);
+        targets = new int[capacity];
+        cards = new Object[capacity];
+        viewTimes = new long[capacity];
+        size = 0;
+    }
+    
+    /**
+     * Linearly probes for the slot holding the given viewer, or the empty slot
+     * where it would go.
+     * 
+     * @param table Power of two sized table with at least one empty slot.
+     * @param viewerId
+     * @return Slot index.
+     */
+    private static int findSlot(int[] table, int viewerId) {
+        int mask = table.length - 1;
+        // Spread consecutive entity ids across the table.
+        int hash = viewerId * 0x9E3779B9;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        
+        while (table[slot] != EMPTY && table[slot] != viewerId) {
+            slot = (slot + 1) & mask;
+        }
+        
+        return slot;
+    }
+}
@@ -24,17 +24,40 @@
 
 package io.github.trystancannon.charactercards.core;
 
+import io.github.trystancannon.charactercards.card.CardCallback;
+import io.github.trystancannon.charactercards.card.CardRegistry;
+import io.github.trystancannon.charactercards.card.CardUpdate;
 import io.github.trystancannon.charactercards.card.CharacterCard;
 import io.github.trystancannon.charactercards.command.CardCommands;
+import io.github.trystancannon.charactercards.metrics.LatencyHistogram;
+import io.github.trystancannon.charactercards.metrics.PluginMetrics;
+import io.github.trystancannon.charactercards.storage.CardFileFormat;
+import io.github.trystancannon.charactercards.storage.CardFormatMigrator;
+import io.github.trystancannon.charactercards.storage.CardSaveQueue;
+import io.github.trystancannon.charactercards.storage.CardStore;
+import io.github.trystancannon.charactercards.storage.FileCardStore;
+import io.github.trystancannon.charactercards.storage.JournalCardStore;
+import io.github.trystancannon.charactercards.storage.SqlCardStore;
+import io.github.trystancannon.charactercards.user.Gender;
+import io.github.trystancannon.charactercards.user.OnlinePlayerIndex;
+import io.github.trystancannon.charactercards.user.PlayerNameIndex;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import org.bukkit.Bukkit;
 import org.bukkit.ChatColor;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandSender;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.entity.Player;
 import org.bukkit.inventory.meta.BookMeta;
 import org.bukkit.plugin.java.JavaPlugin;
 
@@ -57,9 +80,74 @@ public class CharacterCards extends JavaPlugin {
     private static CharacterCards characterCardsSingleton;
     
     /**
-     * List of the currently loaded <code>CharacterCard</code> objects.
+     * Default number of cards of offline players kept in memory.
      */
-    private static final HashMap<UUID, CharacterCard> cards = new HashMap<>();
+    private static final int DEFAULT_CACHED_OFFLINE_CARDS = 500;
+    
+    /**
+     * The currently loaded <code>CharacterCard</code> objects: those of online
+     * players, and the most recently used ones of offline players. Safe to
+     * read from any thread.
+     */
+    private static final CardRegistry cards = new CardRegistry(DEFAULT_CACHED_OFFLINE_CARDS);
+    
+    /**
+     * Name of the file in the data folder which holds the last known name of
+     * every player.
+     */
+    private static final String PLAYER_NAMES_FILE_NAME = "player-names.tsv";
+    
+    /**
+     * Name of the file in the data folder which holds every card when the
+     * journal storage backend is used.
+     */
+    private static final String JOURNAL_FILE_NAME = "cards.journal";
+    
+    /**
+     * Name of the database file in the data folder which holds every card
+     * when the sqlite storage backend is used.
+     */
+    private static final String DATABASE_FILE_NAME = "cards.db";
+    
+    /**
+     * Looks up players, online or not, by name.
+     */
+    private static final PlayerNameIndex playerNames = new PlayerNameIndex();
+    
+    /**
+     * Looks up online players by name or display name.
+     */
+    private static final OnlinePlayerIndex onlinePlayers = new OnlinePlayerIndex();
+    
+    /**
+     * Where the cards are saved, as set in the config.
+     */
+    private CardStore cardStore;
+    
+    /**
+     * Writes edited cards to disk off of the main thread.
+     */
+    private CardSaveQueue saveQueue;
+    
+    /**
+     * Ids of the cards saved or deleted while an asynchronous reload is
+     * running, or <code>null</code> when no reload is running. Only touched
+     * from the main thread.
+     */
+    private Set<UUID> editsDuringReload;
+    
+    /**
+     * Counters and timings of what the plugin does.
+     */
+    private final PluginMetrics metrics = new PluginMetrics();
+    private final AtomicLong saveRequests = metrics.counter("cards_save_requests_total", "Cards queued to be saved after an edit.");
+    private final LatencyHistogram reloadTimer = metrics.histogram("cards_reload_seconds", "Time taken by /card reload, from the command until the cards are replaced.");
+    
+    /**
+     * File in the data folder to which the metrics are written, or
+     * <code>null</code> if they aren't.
+     */
+    private File metricsFile;
     
     public CharacterCards() {
     }
@@ -67,10 +155,26 @@ public class CharacterCards extends JavaPlugin {
     @Override
     public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
         if (command.getName().equalsIgnoreCase("save")) {
-            for (CharacterCard card : cards.values()) {
-                card.saveToFile(getDataFolder().getAbsolutePath());
+            int changedCards = 0;
+            int unchangedCards = 0;
+            
+            // Only cards with unsaved changes are written.
+            for (CharacterCard card : cards.getAll()) {
+                if (card.isDirty()) {
+                    saveCard(card);
+                    changedCards++;
+                } else {
+                    unchangedCards++;
+                }
             }
             
+            sendLabeledMessage(sender, "Saving " + changedCards + " changed cards. Skipped " + unchangedCards + " unchanged cards.");
+            
+            int retries = saveQueue.getRetryBacklog();
+            
+            if (retries > 0) {
+                sendLabeledMessage(sender, ChatColor.RED + "" + retries + " cards failed to save and are being retried. See the server log.");
+            }
             return true;
         }
         
@@ -94,20 +198,151 @@ public class CharacterCards extends JavaPlugin {
         
         characterCardsSingleton = this;
         
+        // Write the default configuration if there isn't one yet.
+        saveDefaultConfig();
+        
+        // Add the identities and words for them from the config before any
+        // card is read.
+        ConfigurationSection genders = getConfig().getConfigurationSection("genders");
+        
+        if (genders != null) {
+            for (String identity : genders.getKeys(false)) {
+                Gender.register(identity, genders.getStringList(identity));
+            }
+        }
+        
+        try {
+            cardStore = createCardStore();
+        } catch (IOException failure) {
+            throw new IllegalStateException("Could not open the card storage.", failure);
+        }
+        
+        saveQueue = new CardSaveQueue(this, cardStore);
+        cards.setUnpinnedCapacity(Math.max(1, getConfig().getInt("cache.offline-cards", DEFAULT_CACHED_OFFLINE_CARDS)));
+        
+        // Load the last known player names, and keep them up to date.
+        try {
+            playerNames.load(getPlayerNamesFile());
+        } catch (IOException failure) {
+            getLogger().log(Level.WARNING, "Failed to load the player name index.", failure);
+        }
+        
+        for (Player player : getServer().getOnlinePlayers()) {
+            playerNames.update(player.getUniqueId(), player.getName());
+            onlinePlayers.add(player);
+        }
+        
+        getServer().getPluginManager().registerEvents(playerNames, this);
+        getServer().getPluginManager().registerEvents(onlinePlayers, this);
+        
         // Initialize all of the card commands.
         CardCommands.init(this);
         // Setup the executor for the base command and its alias: /card and /c.
         getCommand("card").setExecutor(CardCommands.getCommand("card").getCardCommandExecutor());
         getCommand("c").setExecutor(CardCommands.getCommand("card").getCardCommandExecutor());
         
-        // Reload all the cards currently saved.
-        getLogger().info("Loading saved cards...");
-        reloadCards();
-        getLogger().log(Level.INFO, "Loaded {0} cards.", cards.size());
+        // Convert cards left in another format, e.g. from before binary cards,
+        // in the background. Until that's done, cards missing from the store
+        // are read from their old files.
+        final CardFormatMigrator migrator = new CardFormatMigrator(getLogger(), getDataFolder(), cardStore);
+        
+        if (migrator.hasLegacyFiles()) {
+            saveQueue.beginImport(migrator);
+            getServer().getScheduler().runTaskAsynchronously(this, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        migrator.migrate(saveQueue);
+                    } catch (InterruptedException interruption) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        saveQueue.endImport();
+                    }
+                }
+            });
+        }
+        
+        // No cards are read up front. Each player's card is loaded in the
+        // background as they log in, or when a command needs it. Players who
+        // are already online, e.g. after a server reload, are loaded now.
+        getServer().getPluginManager().registerEvents(new PlayerCardListener(this), this);
+        
+        for (Player player : getServer().getOnlinePlayers()) {
+            pinCard(player.getUniqueId());
+        }
+        
+        // Start writing edited cards in the background.
+        long flushIntervalTicks = Math.max(1, getConfig().getLong("saving.flush-interval-ticks", 40));
+        int maxBatchSize = Math.max(1, getConfig().getInt("saving.max-batch-size", 500));
+        int maxWritesPerSecond = Math.max(0, getConfig().getInt("saving.max-writes-per-second", 0));
+        long syncIntervalMillis = Math.max(0, getConfig().getLong("saving.sync-interval-millis", 0));
+        saveQueue.start(flushIntervalTicks, maxBatchSize, maxWritesPerSecond, syncIntervalMillis);
+        getServer().getScheduler().runTaskTimerAsynchronously(this, new Runnable() {
+            @Override
+            public void run() {
+                savePlayerNames();
+            }
+        }, flushIntervalTicks, flushIntervalTicks);
+        
+        metrics.gauge("cards_resident", "Cards currently in memory.", new PluginMetrics.Gauge() {
+            @Override
+            public long get() {
+                return cards.size();
+            }
+        });
+        
+        // Periodically write the metrics for scrapers, if enabled.
+        long metricsIntervalTicks = getConfig().getLong("metrics.write-interval-ticks", 1200);
+        String metricsFileName = getConfig().getString("metrics.file", "metrics.prom");
+        
+        if (metricsIntervalTicks > 0 && metricsFileName != null && !metricsFileName.isEmpty()) {
+            metricsFile = new File(getDataFolder(), metricsFileName);
+            getServer().getScheduler().runTaskTimerAsynchronously(this, new Runnable() {
+                @Override
+                public void run() {
+                    writeMetrics();
+                }
+            }, metricsIntervalTicks, metricsIntervalTicks);
+        }
     }
     
     @Override
     public void onDisable() {
+        // Make sure every pending edit reaches the disk before shutting down.
+        if (saveQueue != null) {
+            saveQueue.shutdown();
+        }
+        
+        if (cardStore != null) {
+            try {
+                cardStore.close();
+            } catch (IOException failure) {
+                getLogger().log(Level.WARNING, "Failed to close the card storage.", failure);
+            }
+        }
+        savePlayerNames();
+        writeMetrics();
+    }
+    
+    /**
+     * @return Counters and timings of what the plugin does.
+     */
+    public PluginMetrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * @return Queue of the cards waiting to be written to storage.
+     */
+    public CardSaveQueue getSaveQueue() {
+        return saveQueue;
+    }
+    
+    /**
+     * @return Number of cards currently in memory.
+     */
+    public static int getResidentCardCount() {
+        return cards.size();
     }
     
     /**
@@ -115,6 +350,8 @@ public class CharacterCards extends JavaPlugin {
      * given card.
      * 
      * Will return <code>null</code> if the player does not have a card currently.
+     * Only the cards in memory are searched, which always include those of
+     * online players. Use <code>getCardForPlayerAsync</code> for anyone else.
      * 
      * @param playerId
      * @return Card for the player with the given id.
@@ -123,35 +360,121 @@ public class CharacterCards extends JavaPlugin {
         return cards.get(playerId);
     }
     
+    /**
+     * Retrieves the <code>CharacterCard</code> object for the player with the
+     * given id, reading it from the card store on a background thread if it
+     * isn't in memory.
+     * 
+     * @param playerId
+     * @param callback Given the player's card on the main thread. Called
+     * right away if the card is already in memory.
+     */
+    public void getCardForPlayerAsync(final UUID playerId, final CardCallback callback) {
+        if (cards.isResident(playerId)) {
+            callback.accept(cards.get(playerId));
+            return;
+        }
+        
+        getServer().getScheduler().runTaskAsynchronously(this, new Runnable() {
+            @Override
+            public void run() {
+                final CharacterCard card = loadCard(playerId);
+                
+                getServer().getScheduler().runTask(CharacterCards.this, new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.accept(card);
+                    }
+                });
+            }
+        });
+    }
+    
+    /**
+     * Looks up the id of a player, online or not, by name, ignoring case.
+     * 
+     * @param name
+     * @return Id of the player, or <code>null</code> if the name is unknown.
+     */
+    public static UUID getPlayerId(String name) {
+        return playerNames.getPlayerId(name);
+    }
+    
+    /**
+     * Looks up an online player by their exact name or display name, ignoring
+     * case.
+     * 
+     * @param name
+     * @return The player, or <code>null</code> if nobody matches.
+     */
+    public static Player getOnlinePlayer(String name) {
+        return onlinePlayers.getPlayer(name);
+    }
+    
+    /**
+     * Like <code>getOnlinePlayer</code>, but a partial name will do if it only
+     * matches one player. Must not be used to pick a player whose card is
+     * changed or deleted.
+     * 
+     * @param name
+     * @return The player, or <code>null</code> if no single player matches.
+     */
+    public static Player getOnlinePlayerByPrefix(String name) {
+        return onlinePlayers.getPlayerByPrefix(name);
+    }
+    
     /**
      * Attempts to locate the <code>CharacterCard</code> object for the
-     * player with the given name.
+     * player with the given name, ignoring case.
      * 
-     * May cause lag due to the iterative nature of this method.
+     * Works for offline players as well, using the last name they were seen
+     * with, as long as their card is in memory.
      * 
      * @param name
      * @return Card for the player with the given name.
      */
     public static CharacterCard getCardForPlayer(String name) {
-        for (UUID playerId : cards.keySet()) {
-            if (Bukkit.getServer().getPlayer(playerId).getName().equalsIgnoreCase(name)) {
-                return cards.get(playerId);
-            }
+        UUID playerId = playerNames.getPlayerId(name);
+        return playerId == null ? null : getCardForPlayer(playerId);
+    }
+    
+    /**
+     * Retrieves a name to show for the player with the given id: their display
+     * name if they're online, otherwise the last name they were seen with.
+     * 
+     * @param playerId
+     * @return Name of the player, or their id if no name is known.
+     */
+    public static String getPlayerName(UUID playerId) {
+        Player player = Bukkit.getPlayer(playerId);
+        
+        if (player != null) {
+            return player.getDisplayName();
         }
         
-        return null;
+        String lastKnownName = playerNames.getLastKnownName(playerId);
+        return lastKnownName != null ? lastKnownName : playerId.toString();
     }
     
     /**
      * Attempts to locate the <code>CharacterCard</code> object for the
      * player whose description book has the given <code>BookMeta</code>.
      * 
+     * The owner is read from the book's identifier page. Only books without a
+     * readable identifier page are compared against every card in memory.
+     * 
      * @param descriptionBookMeta
      * @return Card for the player whose book has the given <code>BookMeta</code>.
      */
     public static CharacterCard getCardForPlayer(BookMeta descriptionBookMeta) {
-        for (CharacterCard card : cards.values()) {
-            if (card.getDescriptionBookMeta().equals(descriptionBookMeta)) {
+        UUID ownerId = CharacterCard.getDescriptionBookOwner(descriptionBookMeta);
+        
+        if (ownerId != null) {
+            return getCardForPlayer(ownerId);
+        }
+        
+        for (CharacterCard card : cards.getAll()) {
+            if (card.getDescriptionBookPages().equals(descriptionBookMeta.getPages())) {
                 return card;
             }
         }
@@ -169,23 +492,53 @@ public class CharacterCards extends JavaPlugin {
      * @return Newly created <code>CharacterCard</code> object.
      */
     public static CharacterCard createCardForPlayer(UUID playerId) {
-        cards.put(playerId, new CharacterCard(playerId));
-        return cards.get(playerId);
+        return cards.create(playerId);
+    }
+    
+    /**
+     * Atomically applies an edit to the card of the player with the given id,
+     * then queues the edited card to be saved. A card is created for the
+     * player first if they don't have one yet.
+     * 
+     * A card which isn't in memory is loaded in the background first, and the
+     * edit is applied on the main thread afterwards.
+     * 
+     * @param playerId
+     * @param update
+     */
+    public void updateCard(final UUID playerId, final CardUpdate update) {
+        CharacterCard card = cards.update(playerId, update);
+        
+        if (card != null) {
+            saveCard(card);
+            return;
+        }
+        
+        getCardForPlayerAsync(playerId, new CardCallback() {
+            @Override
+            public void accept(CharacterCard loaded) {
+                if (cards.isResident(playerId)) {
+                    updateCard(playerId, update);
+                } else {
+                    getLogger().log(Level.WARNING, "Dropped an edit to the card of {0}, which could not be loaded.", playerId);
+                }
+            }
+        });
     }
     
     /**
      * Removes a player's <code>CharacterCard</code> from the currently loaded
-     * list and deletes its save file, if it exists.
+     * list and queues the deletion of its save file, if it exists.
      * 
      * @param playerId
      */
     public void deleteCard(UUID playerId) {
-        cards.remove(playerId);
-        File file = new File(getDataFolder().getAbsolutePath() + "/" + playerId + ".txt");
-        
-        if (file.exists()) {
-            file.delete();
+        if (editsDuringReload != null) {
+            editsDuringReload.add(playerId);
         }
+        
+        cards.remove(playerId);
+        saveQueue.markDeleted(playerId);
     }
     
     /**
@@ -202,28 +555,206 @@ public class CharacterCards extends JavaPlugin {
     }
     
     /**
-     * Reloads the <code>cards</code> hash map by reading each file
-     * found within the data folder as the output of a <code>CharacterCard</code>
-     * object's call to <code>saveToFile</code>.
+     * Re-reads every card in memory from the card store. The cards are read on
+     * a background thread, then all put in place at once on the main thread,
+     * so nobody ever sees a mix of old and reloaded cards. Cards which aren't
+     * in memory are read from the card store when they're next needed anyway.
+     * 
+     * Cards which are saved or deleted while the reload is running keep their
+     * in-memory state, since it is newer than what was read from disk.
+     * 
+     * @param onComplete Run on the main thread once the reloaded cards are in place.
+     * @return <code>false</code> if a reload is already in progress.
      */
-    public void reloadCards() {
-        for (File cardSaveFile : getDataFolder().listFiles()) {
-            CharacterCard card = CharacterCard.fromFile(cardSaveFile);
-            
-            if (card != null) {
-                cards.put(card.getPlayerId(), card);
+    public boolean reloadCardsAsync(final Runnable onComplete) {
+        if (editsDuringReload != null) {
+            return false;
+        }
+        
+        editsDuringReload = new HashSet<>();
+        final List<UUID> residentIds = cards.getResidentIds();
+        final long reloadStart = System.nanoTime();
+        
+        getServer().getScheduler().runTaskAsynchronously(this, new Runnable() {
+            @Override
+            public void run() {
+                final Map<UUID, CharacterCard> reloadedCards = loadCardsFromDisk(residentIds);
+                
+                getServer().getScheduler().runTask(CharacterCards.this, new Runnable() {
+                    @Override
+                    public void run() {
+                        if (reloadedCards != null) {
+                            cards.reload(reloadedCards, editsDuringReload);
+                        }
+                        
+                        editsDuringReload = null;
+                        reloadTimer.recordSince(reloadStart);
+                        onComplete.run();
+                    }
+                });
+            }
+        });
+        
+        return true;
+    }
+    
+    /**
+     * Reads the saved cards of the given players.
+     * 
+     * @param playerIds
+     * @return Loaded cards, with <code>null</code> for the players who have
+     * none, or <code>null</code> if they couldn't be loaded.
+     */
+    private Map<UUID, CharacterCard> loadCardsFromDisk(List<UUID> playerIds) {
+        // Pending edits are newer than what's on disk, so write them out first.
+        saveQueue.flush();
+        
+        HashMap<UUID, CharacterCard> loadedCards = new HashMap<>();
+        
+        try {
+            for (UUID playerId : playerIds) {
+                loadedCards.put(playerId, saveQueue.load(playerId));
             }
+        } catch (IOException failure) {
+            getLogger().log(Level.SEVERE, "Failed to reload the cards. Keeping the currently loaded cards.", failure);
+            return null;
         }
+        
+        return loadedCards;
     }
     
     /**
-     * Saves a card to its proper place. This is a wrapper to
-     * <code>CharacterCard.saveToFile</code>, but the argument passed is
-     * the proper location for storage as designated by the plugin.
+     * Reads the card of a player who isn't resident into the registry. Does
+     * disk I/O, so it must not be called on the main thread.
+     * 
+     * @param playerId
+     * @return The player's card, or <code>null</code> if they have none or it
+     * couldn't be read.
+     */
+    CharacterCard loadCard(UUID playerId) {
+        try {
+            return cards.cache(playerId, saveQueue.load(playerId));
+        } catch (IOException failure) {
+            getLogger().log(Level.WARNING, "Failed to load the card of " + playerId + ".", failure);
+            return null;
+        }
+    }
+    
+    /**
+     * Keeps the card of a player who came online in memory until they quit.
+     * Usually it was already loaded while they logged in; otherwise it is
+     * loaded in the background first.
+     * 
+     * @param playerId 
+     */
+    void pinCard(final UUID playerId) {
+        getCardForPlayerAsync(playerId, new CardCallback() {
+            @Override
+            public void accept(CharacterCard card) {
+                // Could have been dropped again if loading failed, or the
+                // player may have quit while it was loading.
+                if (cards.isResident(playerId) && getServer().getPlayer(playerId) != null) {
+                    cards.pin(playerId, null);
+                }
+            }
+        });
+    }
+    
+    /**
+     * Drops the card of a player who went offline from memory, and writes
+     * their pending edits in the background.
+     * 
+     * @param playerId 
+     */
+    void unloadCard(final UUID playerId) {
+        cards.evict(playerId);
+        
+        getServer().getScheduler().runTaskAsynchronously(this, new Runnable() {
+            @Override
+            public void run() {
+                saveQueue.flush(playerId);
+            }
+        });
+    }
+    
+    /**
+     * Creates the card store selected by the storage section of the config.
+     * 
+     * @return Card store.
+     * @throws IOException If the store couldn't be opened.
+     */
+    private CardStore createCardStore() throws IOException {
+        String backend = getConfig().getString("storage.backend", "files");
+        
+        if (backend.equalsIgnoreCase("journal")) {
+            JournalCardStore journal = new JournalCardStore(new File(getDataFolder(), JOURNAL_FILE_NAME), getLogger());
+            journal.open();
+            return journal;
+        } else if (backend.equalsIgnoreCase("sqlite")) {
+            if (SqlCardStore.isDriverAvailable()) {
+                SqlCardStore database = new SqlCardStore(new File(getDataFolder(), DATABASE_FILE_NAME), Math.max(1, getConfig().getInt("storage.sql.pool-size", 4)));
+                database.open();
+                return database;
+            }
+            
+            getLogger().severe("storage.backend is sqlite in the config, but this server has no SQLite JDBC driver (org.sqlite.JDBC). Saving cards as files.");
+        } else if (!backend.equalsIgnoreCase("files")) {
+            getLogger().warning("Unknown storage.backend in the config. Saving cards as files.");
+        }
+        
+        CardFileFormat format = CardFileFormat.fromName(getConfig().getString("storage.format", "binary"));
+        if (format == null) {
+            getLogger().warning("Unknown storage.format in the config. Saving cards as binary.");
+            format = CardFileFormat.BINARY;
+        }
+        
+        return new FileCardStore(getDataFolder(), format, getLogger());
+    }
+    
+    /**
+     * Writes the player name index to the data folder if it changed.
+     */
+    private void savePlayerNames() {
+        try {
+            playerNames.saveIfChanged(getPlayerNamesFile());
+        } catch (IOException failure) {
+            getLogger().log(Level.WARNING, "Failed to save the player name index.", failure);
+        }
+    }
+    
+    /**
+     * Writes the metrics file, if the metrics are written to one.
+     */
+    private void writeMetrics() {
+        if (metricsFile == null) {
+            return;
+        }
+        
+        try {
+            metrics.writePrometheusFile(metricsFile);
+        } catch (IOException failure) {
+            getLogger().log(Level.WARNING, "Failed to write the metrics to " + metricsFile + ".", failure);
+        }
+    }
+    
+    private File getPlayerNamesFile() {
+        return new File(getDataFolder(), PLAYER_NAMES_FILE_NAME);
+    }
+    
+    /**
+     * Queues a card to be saved to its proper place. The card is written to
+     * the configured card store on a background thread shortly after, so this
+     * returns without touching the disk. Cards without unsaved changes are
+     * skipped.
      * 
      * @param card 
      */
     public void saveCard(CharacterCard card) {
-        card.saveToFile(getDataFolder().getAbsolutePath());
+        if (editsDuringReload != null) {
+            editsDuringReload.add(card.getPlayerId());
+        }
+        
+        saveRequests.incrementAndGet();
+        saveQueue.markDirty(card);
     }
 }
\ No newline at end of file
@@ -0,0 +1,184 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Trystan Cannon.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.trystancannon.charactercards.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of how long something took.
+ * 
+ * Durations are counted in buckets whose bounds are powers of two
+ * nanoseconds: the first bucket holds everything up to 1024 ns (about a
+ * microsecond), each following bucket twice as much as the one before, and
+ * the last one everything over about half a minute. A bucket includes its
+ * upper bound, like the <code>le</code> buckets of Prometheus. Recording a duration
+ * is a few atomic increments, so it can be done on the main thread at will.
+ * 
+ * @author Trystan Cannon
+ */
+public final class LatencyHistogram {
+    /**
+     * Upper bound of the first bucket, as a power of two nanoseconds.
+     */
+    private static final int FIRST_BUCKET_BITS = 10;
+    
+    static final int BUCKET_COUNT = 27;
+    
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumNanos = new AtomicLong();
+    
+    /**
+     * Records how long something took since the given start.
+     * 
+     * @param startNanos Start, from <code>System.nanoTime</code>.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+    
+    /**
+     * Records a duration.
+     * 
+     * @param nanos 
+     */
+    public void record(long nanos) {
+        nanos = Math.max(0, nanos);
+        
+        buckets.incrementAndGet(bucketOf(nanos));
+        sumNanos.addAndGet(nanos);
+        count.incrementAndGet();
+    }
+    
+    /**
+     * @return Number of recorded durations.
+     */
+    public long getCount() {
+        return count.get();
+    }
+    
+    /**
+     * @return Sum of the recorded durations, in nanoseconds.
+     */
+    public long getSumNanos() {
+        return sumNanos.get();
+    }
+    
+    /**
+     * @return Average of the recorded durations, in nanoseconds, or 0 if
+     * there are none.
+     */
+    public long getMeanNanos() {
+        long recorded = count.get();
+        return recorded == 0 ? 0 : sumNanos.get() / recorded;
+    }
+    
+    /**
+     * Estimates a percentile of the recorded durations, rounded up to the
+     * bound of its bucket.
+     * 
+     * @param percentile From 0 to 100.
+     * @return Duration, in nanoseconds, under which the given percentage of
+     * the recorded durations fall, or 0 if there are none.
+     */
+    public long getPercentileNanos(double percentile) {
+        long[] counts = getBucketCounts();
+        long total = 0;
+        
+        for (long bucketCount : counts) {
+            total += bucketCount;
+        }
+        
+        if (total == 0) {
+            return 0;
+        }
+        
+        long rank = (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100);
+        long seen = 0;
+        
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            seen += counts[bucket];
+            
+            if (seen >= Math.max(1, rank)) {
+                return getUpperBoundNanos(bucket);
+            }
+        }
+        
+        return getUpperBoundNanos(counts.length - 1);
+    }
+    
+    /**
+     * @return Number of durations in each bucket, copied one bucket at a time.
+     */
+    long[] getBucketCounts() {
+        long[] counts = new long[BUCKET_COUNT];
+        
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            counts[bucket] = buckets.get(bucket);
+        }
+        
+        return counts;
+    }
+    
+    /**
+     * @param bucket
+     * @return Upper bound of the bucket, in nanoseconds. The last bucket has
+     * no bound, so this is where it starts.
+     */
+    static long getUpperBoundNanos(int bucket) {
+        return 1L << (FIRST_BUCKET_BITS + Math.min(bucket, BUCKET_COUNT - 2));
+    }
+    
+    /**
+     * @param nanos
+     * @return Index of the first bucket whose upper bound is at least the
+     * given duration.
+     */
+    static int bucketOf(long nanos) {
+        // Bits needed for nanos - 1, i.e. the exponent of the smallest power
+        // of two which isn't below nanos.
+        int bits = 64 - Long.numberOfLeadingZeros(Math.max(0, nanos - 1));
+        return Math.min(BUCKET_COUNT - 1, Math.max(0, bits - FIRST_BUCKET_BITS));
+    }
+    
+    /**
+     * Formats a duration for people, e.g. "1.25 ms".
+     * 
+     * @param nanos
+     * @return Formatted duration.
+     */
+    public static String format(long nanos) {
+        if (nanos < TimeUnit.MICROSECONDS.toNanos(1)) {
+            return nanos + " ns";
+        } else if (nanos < TimeUnit.MILLISECONDS.toNanos(1)) {
+            return String.format("%.1f \u00b5s", nanos / 1e3);
+        } else if (nanos < TimeUnit.SECONDS.toNanos(1)) {
+            return String.format("%.2f ms", nanos / 1e6);
+        }
+        
+        return String.format("%.2f s", nanos / 1e9);
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Trystan Cannon.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.trystancannon.charactercards.metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The plugin's counters, gauges and latency histograms, by name.
+ * 
+ * Metrics are registered once, typically while the plugin is enabled, and then
+ * updated without locking. They can be exported in the Prometheus text format,
+ * e.g. to a file read by a scraper.
+ * 
+ * @author Trystan Cannon
+ */
+public final class PluginMetrics {
+    /**
+     * A value which is read whenever the metrics are exported, e.g. the length
+     * of a queue.
+     */
+    public interface Gauge {
+        long get();
+    }
+    
+    private static final String TYPE_COUNTER = "counter";
+    private static final String TYPE_GAUGE = "gauge";
+    private static final String TYPE_HISTOGRAM = "histogram";
+    
+    /**
+     * Every metric, by name, in the order they were registered.
+     */
+    private final LinkedHashMap<String, Family> families = new LinkedHashMap<>();
+    
+    /**
+     * Gets or registers a counter, which only goes up.
+     * 
+     * @param name Name, ending in _total by convention.
+     * @param help Description of the counter.
+     * @return The counter.
+     */
+    public synchronized AtomicLong counter(String name, String help) {
+        Family family = getFamily(name, help, TYPE_COUNTER);
+        Object counter = family.series.get("");
+        
+        if (counter == null) {
+            counter = new AtomicLong();
+            family.series.put("", counter);
+        }
+        
+        return (AtomicLong) counter;
+    }
+    
+    /**
+     * Registers a gauge, replacing any gauge of the same name.
+     * 
+     * @param name
+     * @param help Description of the gauge.
+     * @param gauge 
+     */
+    public synchronized void gauge(String name, String help, Gauge gauge) {
+        getFamily(name, help, TYPE_GAUGE).series.put("", gauge);
+    }
+    
+    /**
+     * Gets or registers a latency histogram.
+     * 
+     * @param name Name, ending in _seconds by convention.
+     * @param help Description of what is timed.
+     * @return The histogram.
+     */
+    public LatencyHistogram histogram(String name, String help) {
+        return histogram(name, help, null, null);
+    }
+    
+    /**
+     * Gets or registers one of a family of latency histograms told apart by a
+     * label, e.g. one per command.
+     * 
+     * @param name Name, ending in _seconds by convention.
+     * @param help Description of what is timed.
+     * @param labelName
+     * @param labelValue
+     * @return The histogram.
+     */
+    public synchronized LatencyHistogram histogram(String name, String help, String labelName, String labelValue) {
+        Family family = getFamily(name, help, TYPE_HISTOGRAM);
+        String labels = labelName == null ? "" : labelName + "=\"" + escapeLabelValue(labelValue) + "\"";
+        Object histogram = family.series.get(labels);
+        
+        if (histogram == null) {
+            histogram = new LatencyHistogram();
+            family.series.put(labels, histogram);
+        }
+        
+        return (LatencyHistogram) histogram;
+    }
+    
+    /**
+     * @return Every histogram, keyed by a short name for people: the metric
+     * name without its cards_ prefix and _seconds suffix, then the label, if
+     * any, e.g. "command age".
+     */
+    public synchronized Map<String, LatencyHistogram> getHistograms() {
+        LinkedHashMap<String, LatencyHistogram> histograms = new LinkedHashMap<>();
+        
+        for (Family family : families.values()) {
+            if (!family.type.equals(TYPE_HISTOGRAM)) {
+                continue;
+            }
+            
+            String shortName = family.name.replaceFirst("^cards_", "").replaceFirst("_seconds$", "");
+            
+            for (Map.Entry<String, Object> series : family.series.entrySet()) {
+                String labels = series.getKey();
+                String label = labels.isEmpty() ? "" : " " + labels.substring(labels.indexOf('"') + 1, labels.length() - 1);
+                histograms.put(shortName + label, (LatencyHistogram) series.getValue());
+            }
+        }
+        
+        return histograms;
+    }
+    
+    /**
+     * Exports every metric in the Prometheus text format.
+     * 
+     * @return Exported metrics.
+     */
+    public synchronized String toPrometheusText() {
+        StringBuilder text = new StringBuilder(4096);
+        
+        for (Family family : families.values()) {
+            text.append("# HELP ").append(family.name).append(' ').append(family.help.replace("\\", "\\\\").replace("\n", "\\n")).append('\n');
+            text.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+            
+            for (Map.Entry<String, Object> series : family.series.entrySet()) {
+                String labels = series.getKey();
+                Object metric = series.getValue();
+                
+                if (metric instanceof AtomicLong) {
+                    appendSample(text, family.name, labels, ((AtomicLong) metric).get());
+                } else if (metric instanceof Gauge) {
+                    appendSample(text, family.name, labels, ((Gauge) metric).get());
+                } else {
+                    appendHistogram(text, family.name, labels, (LatencyHistogram) metric);
+                }
+            }
+        }
+        
+        return text.toString();
+    }
+    
+    /**
+     * Writes every metric to a file in the Prometheus text format. The file is
+     * replaced in one step, so a scraper never reads half of it.
+     * 
+     * @param file
+     * @throws IOException 
+     */
+    public void writePrometheusFile(File file) throws IOException {
+        File tempFile = new File(file.getPath() + ".tmp");
+        
+        Files.write(tempFile.toPath(), toPrometheusText().getBytes(StandardCharsets.UTF_8));
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    private Family getFamily(String name, String help, String type) {
+        Family family = families.get(name);
+        
+        if (family == null) {
+            family = new Family(name, help, type);
+            families.put(name, family);
+        } else if (!family.type.equals(type)) {
+            throw new IllegalArgumentException("Metric " + name + " is already a " + family.type + ".");
+        }
+        
+        return family;
+    }
+    
+    private static void appendHistogram(StringBuilder text, String name, String labels, LatencyHistogram histogram) {
+        String labelPrefix = labels.isEmpty() ? "" : labels + ",";
+        long[] counts = histogram.getBucketCounts();
+        long cumulativeCount = 0;
+        
+        // The last bucket has no upper bound, so it only counts towards +Inf.
+        for (int bucket = 0; bucket < counts.length - 1; bucket++) {
+            cumulativeCount += counts[bucket];
+            appendSample(text, name + "_bucket", labelPrefix + "le=\"" + LatencyHistogram.getUpperBoundNanos(bucket) / 1e9 + "\"", cumulativeCount);
+        }
+        
+        cumulativeCount += counts[counts.length - 1];
+        appendSample(text, name + "_bucket", labelPrefix + "le=\"+Inf\"", cumulativeCount);
+        text.append(name).append("_sum");
+        appendLabels(text, labels);
+        text.append(' ').append(histogram.getSumNanos() / 1e9).append('\n');
+        appendSample(text, name + "_count", labels, cumulativeCount);
+    }
+    
+    private static void appendSample(StringBuilder text, String name, String labels, long value) {
+        text.append(name);
+        appendLabels(text, labels);
+        text.append(' ').append(value).append('\n');
+    }
+    
+    private static void appendLabels(StringBuilder text, String labels) {
+        if (!labels.isEmpty()) {
+            text.append('{').append(labels).append('}');
+        }
+    }
+    
+    private static String escapeLabelValue(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+    
+    /**
+     * Metrics sharing a name, told apart by their labels.
+     */
+    private static final class Family {
+        private final String name;
+        private final String help;
+        private final String type;
+        
+        /**
+         * Each metric by its labels, e.g. command="age", or "" if it has none.
+         */
+        private final LinkedHashMap<String, Object> series = new LinkedHashMap<>();
+        
+        private Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
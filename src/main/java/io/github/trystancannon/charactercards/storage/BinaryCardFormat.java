@@ -0,0 +1,194 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Trystan Cannon.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.trystancannon.charactercards.storage;
+
+import io.github.trystancannon.charactercards.card.CharacterCard;
+import io.github.trystancannon.charactercards.user.Gender;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Compact, versioned binary encoding of a <code>CharacterCard</code>.
+ * 
+ * Each card is encoded as follows, big endian:
+ * 
+ * int     magic number
+ * byte    format version
+ * long    player id, most significant bits
+ * long    player id, least significant bits
+ * int     age
+ * byte    sex: 0 if not set, 1 for male, 2 for female, 3 for another identity
+ * string  name of the other identity, only if the sex is 3
+ * string  name
+ * string  race
+ * string  description
+ * 
+ * Every string is an int byte length, or -1 for <code>null</code>, followed
+ * by that many bytes of UTF-8. Version 1 cards, which only allowed male and
+ * female, are still read.
+ * 
+ * @author Trystan Cannon
+ */
+public final class BinaryCardFormat {
+    /**
+     * Marks the start of an encoded card: "CCRD" in ASCII.
+     */
+    public static final int MAGIC = 0x43435244;
+    
+    /**
+     * Version written by this class. Bumped whenever the layout changes.
+     */
+    public static final byte VERSION = 2;
+    
+    private static final byte SEX_NOT_SET = 0;
+    private static final byte SEX_MALE = 1;
+    private static final byte SEX_FEMALE = 2;
+    private static final byte SEX_OTHER = 3;
+    
+    private BinaryCardFormat() {
+    }
+    
+    /**
+     * Encodes a card.
+     * 
+     * @param card
+     * @return Encoded card, positioned at its start.
+     */
+    public static ByteBuffer encode(CharacterCard card) {
+        Gender sex = card.getSex();
+        byte[] otherSex = sex == null || sex.isBinary() ? null : toBytes(sex.getName());
+        byte[] name = toBytes(card.getName());
+        byte[] race = toBytes(card.getRace());
+        String descriptionText = card.getDescription();
+        byte[] description = toBytes(descriptionText.isEmpty() ? null : descriptionText);
+        
+        ByteBuffer buffer = ByteBuffer.allocate(4 + 1 + 8 + 8 + 4 + 1 + (otherSex == null ? 0 : encodedLength(otherSex)) + encodedLength(name) + encodedLength(race) + encodedLength(description));
+        buffer.putInt(MAGIC);
+        buffer.put(VERSION);
+        buffer.putLong(card.getPlayerId().getMostSignificantBits());
+        buffer.putLong(card.getPlayerId().getLeastSignificantBits());
+        buffer.putInt(card.getAge());
+        
+        if (otherSex != null) {
+            buffer.put(SEX_OTHER);
+            putBytes(buffer, otherSex);
+        } else {
+            buffer.put(sex == null ? SEX_NOT_SET : sex == Gender.MALE ? SEX_MALE : SEX_FEMALE);
+        }
+        
+        putBytes(buffer, name);
+        putBytes(buffer, race);
+        putBytes(buffer, description);
+        
+        // Called through Buffer, since newer JDKs compile the ByteBuffer
+        // overrides in, which Java 8 servers don't have.
+        ((Buffer) buffer).flip();
+        return buffer;
+    }
+    
+    /**
+     * Decodes one card, starting at the buffer's position. The position is left
+     * just past the end of the card.
+     * 
+     * @param buffer
+     * @return Decoded card.
+     * @throws IOException If the buffer doesn't hold a complete, valid card.
+     */
+    public static CharacterCard decode(ByteBuffer buffer) throws IOException {
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a binary character card.");
+            }
+            
+            byte version = buffer.get();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported binary card version " + version + ".");
+            }
+            
+            UUID playerId = new UUID(buffer.getLong(), buffer.getLong());
+            int age = buffer.getInt();
+            byte sexCode = buffer.get();
+            Gender sex;
+            
+            if (sexCode == SEX_NOT_SET) {
+                sex = null;
+            } else if (sexCode == SEX_MALE) {
+                sex = Gender.MALE;
+            } else if (sexCode == SEX_FEMALE) {
+                sex = Gender.FEMALE;
+            } else if (sexCode == SEX_OTHER && version >= 2) {
+                sex = Gender.valueOf(getString(buffer));
+            } else {
+                throw new IOException("Binary character card has an unknown sex " + sexCode + ".");
+            }
+            
+            String name = getString(buffer);
+            String race = getString(buffer);
+            String description = getString(buffer);
+            
+            return new CharacterCard(playerId, name, age, sex, race, description);
+        } catch (BufferUnderflowException truncated) {
+            throw new IOException("Binary character card is truncated.", truncated);
+        }
+    }
+    
+    private static byte[] toBytes(String text) {
+        return text == null ? null : text.getBytes(StandardCharsets.UTF_8);
+    }
+    
+    private static int encodedLength(byte[] bytes) {
+        return 4 + (bytes == null ? 0 : bytes.length);
+    }
+    
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        if (bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+    
+    private static String getString(ByteBuffer buffer) throws IOException {
+        int length = buffer.getInt();
+        
+        if (length == -1) {
+            return null;
+        } else if (length < 0 || length > buffer.remaining()) {
+            throw new IOException("Binary character card has a malformed string.");
+        }
+        
+        // Decode straight from the buffer, without copying the bytes out first.
+        ByteBuffer bytes = buffer.slice();
+        ((Buffer) bytes).limit(length);
+        ((Buffer) buffer).position(buffer.position() + length);
+        
+        return StandardCharsets.UTF_8.decode(bytes).toString();
+    }
+}
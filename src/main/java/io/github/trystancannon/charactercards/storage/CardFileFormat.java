@@ -0,0 +1,136 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Trystan Cannon.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.trystancannon.charactercards.storage;
+
+import io.github.trystancannon.charactercards.card.CharacterCard;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.UUID;
+
+/**
+ * The formats in which a card can be saved to its own file within the data
+ * folder. Each file is named after the id of the player who owns the card.
+ * 
+ * @author Trystan Cannon
+ */
+public enum CardFileFormat {
+    /**
+     * The original line based format written by <code>CharacterCard.saveToFile</code>.
+     */
+    TEXT(".txt") {
+        @Override
+        public void write(CharacterCard card, File file) throws IOException {
+            card.saveToFile(file);
+        }
+        
+        @Override
+        public CharacterCard read(File file) throws IOException {
+            return CharacterCard.fromFile(file);
+        }
+    },
+    
+    /**
+     * The length prefixed format of <code>BinaryCardFormat</code>.
+     */
+    BINARY(".card") {
+        @Override
+        public void write(CharacterCard card, File file) throws IOException {
+            ByteBuffer encodedCard = BinaryCardFormat.encode(card);
+            
+            try (FileChannel channel = new FileOutputStream(file).getChannel()) {
+                while (encodedCard.hasRemaining()) {
+                    channel.write(encodedCard);
+                }
+            }
+        }
+        
+        @Override
+        public CharacterCard read(File file) throws IOException {
+            return BinaryCardFormat.decode(ByteBuffer.wrap(Files.readAllBytes(file.toPath())));
+        }
+    };
+    
+    private final String extension;
+    
+    private CardFileFormat(String extension) {
+        this.extension = extension;
+    }
+    
+    /**
+     * @return Extension of the files in this format, including the dot.
+     */
+    public String getExtension() {
+        return extension;
+    }
+    
+    /**
+     * @param folder
+     * @param playerId
+     * @return File in which the card of the player with the given id is saved.
+     */
+    public File getFile(File folder, UUID playerId) {
+        return new File(folder, playerId + extension);
+    }
+    
+    /**
+     * Writes a card to the given file, replacing the file if it already
+     * exists. The file must be named like the card's file in
+     * <code>getFile</code> to be read back, though it may be in another folder.
+     * 
+     * @param card
+     * @param file
+     * @throws IOException 
+     */
+    public abstract void write(CharacterCard card, File file) throws IOException;
+    
+    /**
+     * Reads the card saved in the given file.
+     * 
+     * @param file
+     * @return Card, or <code>null</code> if the file didn't hold any card information.
+     * @throws IOException 
+     */
+    public abstract CharacterCard read(File file) throws IOException;
+    
+    /**
+     * Finds the format with the given name, ignoring case, e.g. "binary".
+     * 
+     * @param name
+     * @return Format with the given name, or <code>null</code> if there isn't one.
+     */
+    public static CardFileFormat fromName(String name) {
+        for (CardFileFormat format : values()) {
+            if (format.name().equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        
+        return null;
+    }
+}
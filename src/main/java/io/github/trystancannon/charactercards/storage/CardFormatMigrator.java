@@ -0,0 +1,190 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Trystan Cannon.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.trystancannon.charactercards.storage;
+
+import io.github.trystancannon.charactercards.card.CharacterCard;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Imports card files left in the data folder into the configured
+ * <code>CardStore</code>, e.g. text cards from before binary cards existed.
+ * 
+ * The imported files are moved into a backup folder, so the migration only
+ * ever happens once per file and can be undone by hand. Files which can't be
+ * read are left where they are.
+ * 
+ * The migration runs in the background while the server is up. Until it is
+ * done, <code>CardSaveQueue</code> reads a card which isn't in the store yet
+ * from its legacy file through <code>loadLegacy</code>, and a card which was
+ * changed or deleted in the meantime is not overwritten by its legacy file.
+ * 
+ * @author Trystan Cannon
+ */
+public final class CardFormatMigrator {
+    /**
+     * Name of the folder, within the data folder, which receives the imported files.
+     */
+    public static final String LEGACY_FOLDER_NAME = "legacy-cards";
+    
+    private final Logger logger;
+    private final File folder;
+    
+    /**
+     * Format of the target store's files, or <code>null</code> if it doesn't
+     * keep its cards in card files.
+     */
+    private final CardFileFormat targetFormat;
+    
+    /**
+     * @param logger
+     * @param folder Folder holding the legacy card files.
+     * @param target Store the cards are imported into.
+     */
+    public CardFormatMigrator(Logger logger, File folder, CardStore target) {
+        this.logger = logger;
+        this.folder = folder;
+        this.targetFormat = target instanceof FileCardStore ? ((FileCardStore) target).getFormat() : null;
+    }
+    
+    /**
+     * @return Whether there are card files which the target store doesn't
+     * keep its cards in.
+     */
+    public boolean hasLegacyFiles() {
+        for (CardFileFormat source : CardFileFormat.values()) {
+            File[] sourceFiles = CardLoader.listCardFiles(folder, source);
+            
+            if (source != targetFormat && sourceFiles != null && sourceFiles.length > 0) {
+                return true;
+            }
+        }
+        
+        return false;
+    }
+    
+    /**
+     * Reads a player's card from a legacy card file which hasn't been
+     * imported yet.
+     * 
+     * @param playerId
+     * @return The player's card, or <code>null</code> if they have no legacy
+     * card file left.
+     * @throws IOException 
+     */
+    public CharacterCard loadLegacy(UUID playerId) throws IOException {
+        for (CardFileFormat source : CardFileFormat.values()) {
+            if (source == targetFormat) {
+                continue;
+            }
+            
+            try {
+                CharacterCard card = source.read(source.getFile(folder, playerId));
+                
+                if (card != null) {
+                    return card;
+                }
+            } catch (FileNotFoundException | NoSuchFileException missing) {
+                // Not in this format, or imported meanwhile.
+            }
+        }
+        
+        return null;
+    }
+    
+    /**
+     * Imports every legacy card file into the store of the given save queue,
+     * which must be the target store.
+     * 
+     * If the store can't be written, the migration stops and leaves the
+     * remaining files of that format where they are. A backup left by an
+     * earlier migration is replaced by the file imported now.
+     * 
+     * @param saveQueue
+     * @return Number of cards imported.
+     * @throws InterruptedException 
+     */
+    public int migrate(CardSaveQueue saveQueue) throws InterruptedException {
+        int migratedCount = 0;
+        
+        for (CardFileFormat source : CardFileFormat.values()) {
+            File[] sourceFiles = CardLoader.listCardFiles(folder, source);
+            
+            if (source == targetFormat || sourceFiles == null || sourceFiles.length == 0) {
+                continue;
+            }
+            
+            long startTime = System.nanoTime();
+            logger.log(Level.INFO, "Importing {0} {1} card files...", new Object[] {sourceFiles.length, source});
+            
+            Map<UUID, CharacterCard> cards = new CardLoader(logger, source).loadAll(folder);
+            int importedCount = 0;
+            
+            try {
+                for (CharacterCard card : cards.values()) {
+                    if (saveQueue.importCard(card)) {
+                        importedCount++;
+                    }
+                }
+                saveQueue.flushImports();
+                
+                File legacyFolder = new File(folder, LEGACY_FOLDER_NAME);
+                Files.createDirectories(legacyFolder.toPath());
+                
+                // Only the files which were read are moved; the others are
+                // skipped by the loader and stay put. A card skipped because
+                // it changed since is already in the store.
+                for (UUID playerId : cards.keySet()) {
+                    File sourceFile = source.getFile(folder, playerId);
+                    
+                    try {
+                        Files.move(sourceFile.toPath(), new File(legacyFolder, sourceFile.getName()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    } catch (IOException failure) {
+                        logger.log(Level.SEVERE, "Failed to move " + sourceFile.getName() + " to " + LEGACY_FOLDER_NAME + ". It will be imported again unless it is removed.", failure);
+                    }
+                }
+            } catch (IOException failure) {
+                logger.log(Level.SEVERE, "Failed to import the " + source + " card files. They were left in place.", failure);
+                continue;
+            }
+            
+            long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+            logger.log(Level.INFO, "Imported {0} cards in {1} ms, skipping {2} which changed since. The old files were moved to {3}.", new Object[] {importedCount, elapsedMillis, cards.size() - importedCount, LEGACY_FOLDER_NAME});
+            
+            migratedCount += importedCount;
+        }
+        
+        return migratedCount;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Trystan Cannon.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.trystancannon.charactercards.storage;
+
+import io.github.trystancannon.charactercards.card.CharacterCard;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Loads every card save file of one format in a folder, parsing the files in
+ * parallel on a small pool of worker threads.
+ * 
+ * @author Trystan Cannon
+ */
+public final class CardLoader {
+    /**
+     * How many loaded files there are between each progress message.
+     */
+    private static final int PROGRESS_INTERVAL = 5000;
+    
+    private final Logger logger;
+    private final CardFileFormat format;
+    
+    public CardLoader(Logger logger, CardFileFormat format) {
+        this.logger = logger;
+        this.format = format;
+    }
+    
+    /**
+     * Lists the card files of the given format in a folder.
+     * 
+     * @param folder
+     * @param format
+     * @return Card files, or <code>null</code> if the folder couldn't be read.
+     */
+    public static File[] listCardFiles(File folder, final CardFileFormat format) {
+        return folder.listFiles(new FilenameFilter() {
+            @Override
+            public boolean accept(File folder, String name) {
+                return name.endsWith(format.getExtension());
+            }
+        });
+    }
+    
+    /**
+     * Reads every card save file in the given folder. Files which can't be
+     * parsed are skipped.
+     * 
+     * @param folder
+     * @return Loaded cards, keyed by the ids of the players who own them.
+     * @throws InterruptedException If the calling thread is interrupted while
+     * waiting on the workers. Nothing is returned in that case.
+     */
+    public ConcurrentHashMap<UUID, CharacterCard> loadAll(File folder) throws InterruptedException {
+        final File[] files = listCardFiles(folder, format);
+        final ConcurrentHashMap<UUID, CharacterCard> loaded = new ConcurrentHashMap<>();
+        
+        if (files == null || files.length == 0) {
+            return loaded;
+        }
+        
+        long startTime = System.nanoTime();
+        int workerCount = Math.min(files.length, Runtime.getRuntime().availableProcessors());
+        ExecutorService workers = Executors.newFixedThreadPool(workerCount, new LoaderThreadFactory());
+        
+        // Each worker claims the next unread file until none are left. This
+        // keeps the workers evenly busy without a task object per file.
+        final AtomicInteger nextFile = new AtomicInteger();
+        final AtomicInteger filesRead = new AtomicInteger();
+        List<Callable<Void>> tasks = new ArrayList<>(workerCount);
+        
+        for (int worker = 0; worker < workerCount; worker++) {
+            tasks.add(new Callable<Void>() {
+                @Override
+                public Void call() {
+                    int fileIndex;
+                    
+                    while ((fileIndex = nextFile.getAndIncrement()) < files.length) {
+                        try {
+                            CharacterCard card = format.read(files[fileIndex]);
+                            
+                            if (card != null) {
+                                loaded.put(card.getPlayerId(), card);
+                            }
+                        } catch (IOException failure) {
+                            logger.log(Level.WARNING, "Skipping unreadable card file " + files[fileIndex].getName() + ".", failure);
+                        }
+                        
+                        int read = filesRead.incrementAndGet();
+                        if (read % PROGRESS_INTERVAL == 0) {
+                            logger.log(Level.INFO, "Read {0}/{1} card files...", new Object[] {read, files.length});
+                        }
+                    }
+                    
+                    return null;
+                }
+            });
+        }
+        
+        try {
+            for (Future<Void> result : workers.invokeAll(tasks)) {
+                try {
+                    result.get();
+                } catch (ExecutionException failure) {
+                    logger.log(Level.SEVERE, "A card loader worker failed.", failure.getCause());
+                }
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+        
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        logger.log(Level.INFO, "Read {0} card files with {1} threads in {2} ms.", new Object[] {files.length, workerCount, elapsedMillis});
+        
+        return loaded;
+    }
+    
+    /**
+     * Names the worker threads and keeps them from holding up a shutdown.
+     */
+    private static final class LoaderThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadCount = new AtomicInteger();
+        
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "CharacterCards-Loader-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,670 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Trystan Cannon.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.trystancannon.charactercards.storage;
+
+import io.github.trystancannon.charactercards.card.CharacterCard;
+import io.github.trystancannon.charactercards.core.CharacterCards;
+import io.github.trystancannon.charactercards.metrics.LatencyHistogram;
+import io.github.trystancannon.charactercards.metrics.PluginMetrics;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import org.bukkit.scheduler.BukkitTask;
+
+/**
+ * Write-behind persistence stage for <code>CharacterCard</code> objects.
+ * 
+ * Commands mark a card as dirty and return immediately. An asynchronous
+ * autosave task then writes the pending cards to the <code>CardStore</code>
+ * every flush interval. Repeated edits to the same card within one interval
+ * are coalesced into a single write of the card's latest state, and cards
+ * without unsaved changes aren't written at all.
+ * 
+ * Each autosave writes at most one batch, oldest writes first, and can be
+ * limited to a number of writes per second so it never saturates the disk.
+ * Whatever doesn't fit waits for the next run. <code>flush</code> ignores both
+ * limits and writes everything.
+ * 
+ * The store is flushed, i.e. its writes are made durable, at most once per
+ * sync interval, so one sync covers every write made since the last one. A
+ * card is only marked as saved once such a flush succeeded. If the flush
+ * fails, the writes it covered are queued again.
+ * 
+ * A write which fails stays queued and is retried by the next run, unless a
+ * newer write for the same player replaces it first.
+ * 
+ * While a <code>CardFormatMigrator</code> imports legacy card files in the
+ * background, cards the store doesn't have yet are read from their legacy
+ * file, and the import never overwrites a card which was saved or deleted
+ * through this queue.
+ * 
+ * @author Trystan Cannon
+ */
+public final class CardSaveQueue implements Runnable {
+    private final CharacterCards plugin;
+    private final CardStore store;
+    
+    /**
+     * Pending writes keyed by the id of the player who owns the card. Only the
+     * most recent write for each player is kept.
+     */
+    private final ConcurrentHashMap<UUID, PendingWrite> pending = new ConcurrentHashMap<>();
+    
+    /**
+     * Orders pending writes by when they were queued.
+     */
+    private final AtomicLong writeSequence = new AtomicLong();
+    
+    /**
+     * Held while flushing so the asynchronous task and a final drain in
+     * <code>onDisable</code> never write to the store at the same time.
+     */
+    private final ReentrantLock flushLock = new ReentrantLock();
+    
+    private BukkitTask flushTask;
+    
+    /**
+     * The running import of legacy card files, or <code>null</code> if there
+     * is none.
+     */
+    private volatile Import currentImport;
+    
+    /**
+     * Set when the plugin is disabled, so a running autosave stops early.
+     */
+    private volatile boolean stopping = false;
+    
+    /**
+     * Maximum number of writes per autosave run.
+     */
+    private volatile int maxBatchSize = Integer.MAX_VALUE;
+    
+    /**
+     * Minimum time between two writes of an autosave run, or 0 if unlimited.
+     */
+    private volatile long nanosPerWrite = 0;
+    
+    /**
+     * Minimum time between two flushes of the store by autosave runs, or 0 to
+     * flush after every run.
+     */
+    private volatile long syncIntervalNanos = 0;
+    
+    /**
+     * When the store was last flushed, and whether it has been written to since.
+     * Only used while holding the flush lock.
+     */
+    private long lastStoreFlush = System.nanoTime();
+    private boolean storeFlushPending = false;
+    
+    /**
+     * Writes handed to the store since it was last flushed, keyed by player.
+     * Only used while holding the flush lock.
+     */
+    private final HashMap<UUID, PendingWrite> unsyncedWrites = new HashMap<>();
+    
+    /**
+     * How long the last flush or autosave run took, and how many writes it made.
+     */
+    private volatile long lastFlushNanos = 0;
+    private volatile int lastFlushWrites = 0;
+    
+    /**
+     * Number of cards and deletions handed to the store.
+     */
+    private final AtomicLong completedWrites;
+    
+    /**
+     * Number of writes avoided, either because the card had no unsaved
+     * changes or because a newer edit replaced it in the queue.
+     */
+    private final AtomicLong skippedWrites;
+    
+    /**
+     * Number of writes the store failed, each of which is retried later.
+     */
+    private final AtomicLong failedWrites;
+    
+    /**
+     * How long each write, and each flush of the store, took.
+     */
+    private final LatencyHistogram writeTimer;
+    private final LatencyHistogram storeFlushTimer;
+    
+    public CardSaveQueue(CharacterCards plugin, CardStore store) {
+        this.plugin = plugin;
+        this.store = store;
+        
+        PluginMetrics metrics = plugin.getMetrics();
+        completedWrites = metrics.counter("cards_store_writes_total", "Cards and deletions written to the card store.");
+        skippedWrites = metrics.counter("cards_store_skipped_writes_total", "Writes avoided because the card was unchanged or edited again first.");
+        failedWrites = metrics.counter("cards_store_failed_writes_total", "Writes the card store failed, including retries.");
+        writeTimer = metrics.histogram("cards_store_write_seconds", "Time taken to hand one card or deletion to the card store.");
+        storeFlushTimer = metrics.histogram("cards_store_flush_seconds", "Time taken to flush the card store, e.g. to sync it to disk.");
+        metrics.gauge("cards_save_backlog", "Cards waiting to be written to the card store.", new PluginMetrics.Gauge() {
+            @Override
+            public long get() {
+                return pending.size();
+            }
+        });
+    }
+    
+    /**
+     * Starts the asynchronous autosave task.
+     * 
+     * @param flushIntervalTicks Number of ticks between autosave runs.
+     * @param maxBatchSize Maximum number of writes per run.
+     * @param maxWritesPerSecond Maximum rate of writes during a run, or 0
+     * for no limit.
+     * @param syncIntervalMillis Minimum time between two flushes of the store
+     * by autosave runs, or 0 to flush after every run.
+     */
+    public void start(long flushIntervalTicks, int maxBatchSize, int maxWritesPerSecond, long syncIntervalMillis) {
+        this.maxBatchSize = maxBatchSize;
+        nanosPerWrite = maxWritesPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / maxWritesPerSecond : 0;
+        syncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(syncIntervalMillis);
+        
+        if (flushTask == null) {
+            flushTask = plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, this, flushIntervalTicks, flushIntervalTicks);
+        }
+    }
+    
+    /**
+     * Stops the asynchronous task and synchronously writes everything that is
+     * still pending. Called when the plugin is disabled.
+     */
+    public void shutdown() {
+        stopping = true;
+        
+        if (flushTask != null) {
+            flushTask.cancel();
+            flushTask = null;
+        }
+        
+        flush();
+        plugin.getLogger().log(Level.INFO, "Wrote {0,number,#} cards, skipped {1,number,#} unchanged or superseded writes.", new Object[] {completedWrites.get(), skippedWrites.get()});
+        
+        if (!pending.isEmpty()) {
+            plugin.getLogger().log(Level.SEVERE, "Failed to save {0,number,#} cards. Their latest changes are lost.", pending.size());
+        }
+    }
+    
+    /**
+     * Queues the given card to be written to disk, unless it has no unsaved
+     * changes. Registered cards are never modified in place, so the
+     * background writer can read it safely.
+     * 
+     * @param card 
+     */
+    public void markDirty(CharacterCard card) {
+        if (!card.isDirty()) {
+            skippedWrites.incrementAndGet();
+            return;
+        }
+        
+        PendingWrite replaced = pending.put(card.getPlayerId(), new PendingWrite(card, writeSequence.incrementAndGet()));
+        
+        if (replaced != null) {
+            skippedWrites.incrementAndGet();
+        }
+    }
+    
+    /**
+     * Queues the deletion of the saved card of the player with the given id.
+     * Any write still pending for that player is discarded.
+     * 
+     * @param playerId 
+     */
+    public void markDeleted(UUID playerId) {
+        Import running = currentImport;
+        
+        if (running != null) {
+            running.deleted.add(playerId);
+        }
+        
+        pending.put(playerId, new PendingWrite(null, writeSequence.incrementAndGet()));
+    }
+    
+    /**
+     * Reads the card of the player with the given id, taking writes which are
+     * still queued into account since they're newer than the store.
+     * 
+     * @param playerId
+     * @return The player's card, or <code>null</code> if they have none.
+     * @throws IOException 
+     */
+    public CharacterCard load(UUID playerId) throws IOException {
+        PendingWrite write = pending.get(playerId);
+        
+        if (write != null) {
+            return write.card;
+        }
+        
+        CharacterCard card = store.load(playerId);
+        Import running = currentImport;
+        
+        if (card == null && running != null && !running.deleted.contains(playerId)) {
+            card = running.source.loadLegacy(playerId);
+            
+            // The legacy file may have been imported and moved in between.
+            if (card == null) {
+                card = store.load(playerId);
+            }
+        }
+        
+        return card;
+    }
+    
+    /**
+     * Makes <code>load</code> fall back to the legacy card files of the given
+     * migrator until <code>endImport</code> is called.
+     * 
+     * @param source 
+     */
+    public void beginImport(CardFormatMigrator source) {
+        currentImport = new Import(source);
+    }
+    
+    /**
+     * Ends the import started by <code>beginImport</code>.
+     */
+    public void endImport() {
+        currentImport = null;
+    }
+    
+    /**
+     * Writes a card read from a legacy card file to the store, unless the
+     * player's card was saved or deleted since the import began. The store
+     * isn't flushed; see <code>flushImports</code>.
+     * 
+     * @param card
+     * @return Whether the card was written.
+     * @throws IOException If the store failed to write the card, or the
+     * plugin is being disabled.
+     */
+    public boolean importCard(CharacterCard card) throws IOException {
+        UUID playerId = card.getPlayerId();
+        Import running = currentImport;
+        
+        flushLock.lock();
+        
+        try {
+            if (stopping) {
+                throw new IOException("The plugin is being disabled.");
+            }
+            
+            // The queued or stored card is newer than the legacy file.
+            if (pending.containsKey(playerId) || (running != null && running.deleted.contains(playerId)) || store.load(playerId) != null) {
+                return false;
+            }
+            
+            store.save(card);
+            storeFlushPending = true;
+            return true;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+    
+    /**
+     * Flushes the store so the cards written by <code>importCard</code> are
+     * durable before their legacy files are moved away.
+     * 
+     * @throws IOException 
+     */
+    public void flushImports() throws IOException {
+        flushLock.lock();
+        
+        try {
+            syncStore();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+    
+    /**
+     * @return Number of cards currently waiting to be written.
+     */
+    public int getBacklog() {
+        return pending.size();
+    }
+    
+    /**
+     * @return How long the last flush or autosave run took, in milliseconds.
+     */
+    public long getLastFlushMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(lastFlushNanos);
+    }
+    
+    /**
+     * @return Number of writes made by the last flush or autosave run.
+     */
+    public int getLastFlushWrites() {
+        return lastFlushWrites;
+    }
+    
+    /**
+     * @return Number of cards and deletions written so far.
+     */
+    public long getCompletedWrites() {
+        return completedWrites.get();
+    }
+    
+    /**
+     * @return Number of writes skipped so far, because the card was unchanged
+     * or a newer edit replaced it before it was written.
+     */
+    public long getSkippedWrites() {
+        return skippedWrites.get();
+    }
+    
+    /**
+     * @return Number of writes which failed so far, including retries.
+     */
+    public long getFailedWrites() {
+        return failedWrites.get();
+    }
+    
+    /**
+     * @return Number of queued writes which have failed at least once and are
+     * waiting to be retried.
+     */
+    public int getRetryBacklog() {
+        int retries = 0;
+        
+        for (PendingWrite write : pending.values()) {
+            if (write.failedAttempts > 0) {
+                retries++;
+            }
+        }
+        
+        return retries;
+    }
+    
+    /**
+     * Writes one batch of pending cards, unless the previous run is still busy.
+     */
+    @Override
+    public void run() {
+        if (!flushLock.tryLock()) {
+            return;
+        }
+        
+        try {
+            if (pending.isEmpty()) {
+                // Writes of earlier runs may still be waiting for the sync interval.
+                if (storeFlushPending && System.nanoTime() - lastStoreFlush >= syncIntervalNanos) {
+                    flushStore();
+                }
+                
+                return;
+            }
+            
+            long start = System.nanoTime();
+            List<Map.Entry<UUID, PendingWrite>> batch = new ArrayList<>(pending.entrySet());
+            
+            // Only sort when some writes have to wait, so the oldest go first.
+            if (batch.size() > maxBatchSize) {
+                Collections.sort(batch, OLDEST_FIRST);
+                batch = batch.subList(0, maxBatchSize);
+            }
+            
+            long nextWriteTime = start;
+            int writes = 0;
+            
+            for (Map.Entry<UUID, PendingWrite> entry : batch) {
+                // Leave the rest to the final flush when shutting down.
+                if (stopping) {
+                    break;
+                }
+                
+                if (nanosPerWrite > 0) {
+                    long wait = nextWriteTime - System.nanoTime();
+                    
+                    if (wait > 0) {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    }
+                    
+                    nextWriteTime = Math.max(nextWriteTime, System.nanoTime()) + nanosPerWrite;
+                }
+                
+                write(entry.getKey(), entry.getValue());
+                writes++;
+            }
+            
+            if (System.nanoTime() - lastStoreFlush >= syncIntervalNanos) {
+                flushStore();
+            }
+            
+            recordFlush(start, writes);
+        } catch (InterruptedException interruption) {
+            // The server is shutting down; onDisable drains the rest.
+            flushStore();
+            Thread.currentThread().interrupt();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+    
+    /**
+     * Writes every pending card to the store on the calling thread, ignoring
+     * the batch size and rate limit.
+     */
+    public void flush() {
+        flushLock.lock();
+        
+        try {
+            long start = System.nanoTime();
+            int writes = 0;
+            
+            for (Map.Entry<UUID, PendingWrite> entry : pending.entrySet()) {
+                write(entry.getKey(), entry.getValue());
+                writes++;
+            }
+            
+            flushStore();
+            recordFlush(start, writes);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+    
+    /**
+     * Writes the pending card of a single player, if there is one, on the
+     * calling thread. The store is only flushed if the sync interval has
+     * passed.
+     * 
+     * @param playerId 
+     */
+    public void flush(UUID playerId) {
+        flushLock.lock();
+        
+        try {
+            PendingWrite write = pending.get(playerId);
+            
+            if (write != null) {
+                write(playerId, write);
+                
+                if (System.nanoTime() - lastStoreFlush >= syncIntervalNanos) {
+                    flushStore();
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+    
+    /**
+     * Hands a pending write to the store, then dequeues it until the store is
+     * flushed. A write which fails stays queued to be retried. Must hold the
+     * flush lock.
+     * 
+     * @param playerId
+     * @param write 
+     */
+    private void write(UUID playerId, PendingWrite write) {
+        long start = System.nanoTime();
+        
+        try {
+            if (write.card == null) {
+                store.delete(playerId);
+            } else {
+                store.save(write.card);
+            }
+            
+            storeFlushPending = true;
+            completedWrites.incrementAndGet();
+        } catch (IOException failure) {
+            failedWrites.incrementAndGet();
+            writeTimer.recordSince(start);
+            
+            // Only log the first failure of each write, not every retry.
+            if (write.failedAttempts++ == 0) {
+                plugin.getLogger().log(Level.WARNING, "Failed to save the card for " + playerId + ". It will be retried.", failure);
+            }
+            
+            return;
+        }
+        
+        writeTimer.recordSince(start);
+        
+        if (write.failedAttempts > 0) {
+            plugin.getLogger().log(Level.INFO, "Saved the card for {0} after {1} failed attempts.", new Object[] {playerId, write.failedAttempts});
+        }
+        
+        // Only dequeue the write once the store has it, so load never falls
+        // between the two. A newer write stays queued.
+        unsyncedWrites.put(playerId, write);
+        pending.remove(playerId, write);
+    }
+    
+    private void recordFlush(long start, int writes) {
+        lastFlushNanos = System.nanoTime() - start;
+        lastFlushWrites = writes;
+    }
+    
+    /**
+     * Flushes the store, logging a failure. Must hold the flush lock.
+     */
+    private void flushStore() {
+        try {
+            syncStore();
+        } catch (IOException failure) {
+            plugin.getLogger().log(Level.WARNING, "Failed to flush the card store. Its writes since the last flush will be retried.", failure);
+        }
+    }
+    
+    /**
+     * Flushes the store, then marks the cards written since the last flush as
+     * saved. If the flush fails, those writes are queued again, unless a newer
+     * write for the same player is queued already. Must hold the flush lock.
+     * 
+     * @throws IOException 
+     */
+    private void syncStore() throws IOException {
+        lastStoreFlush = System.nanoTime();
+        
+        try {
+            store.flush();
+        } catch (IOException failure) {
+            for (Map.Entry<UUID, PendingWrite> entry : unsyncedWrites.entrySet()) {
+                PendingWrite write = entry.getValue();
+                write.failedAttempts++;
+                failedWrites.incrementAndGet();
+                pending.putIfAbsent(entry.getKey(), write);
+            }
+            
+            unsyncedWrites.clear();
+            throw failure;
+        } finally {
+            storeFlushTimer.recordSince(lastStoreFlush);
+        }
+        
+        storeFlushPending = false;
+        
+        for (PendingWrite write : unsyncedWrites.values()) {
+            if (write.card != null) {
+                write.card.markSaved(write.card.getVersion());
+            }
+        }
+        
+        unsyncedWrites.clear();
+    }
+    
+    /**
+     * A queued write. A <code>null</code> card marks the deletion of the
+     * player's save file.
+     */
+    private static final class PendingWrite {
+        private final CharacterCard card;
+        private final long sequence;
+        
+        /**
+         * Number of times the store failed this write. Only used while
+         * holding the flush lock.
+         */
+        private int failedAttempts = 0;
+        
+        private PendingWrite(CharacterCard card, long sequence) {
+            this.card = card;
+            this.sequence = sequence;
+        }
+    }
+    
+    /**
+     * State of a running import of legacy card files.
+     */
+    private static final class Import {
+        private final CardFormatMigrator source;
+        
+        /**
+         * Players whose cards were deleted since the import began, so their
+         * legacy files are neither read nor imported.
+         */
+        private final Set<UUID> deleted = Collections.newSetFromMap(new ConcurrentHashMap<UUID, Boolean>());
+        
+        private Import(CardFormatMigrator source) {
+            this.source = source;
+        }
+    }
+    
+    private static final Comparator<Map.Entry<UUID, PendingWrite>> OLDEST_FIRST = new Comparator<Map.Entry<UUID, PendingWrite>>() {
+        @Override
+        public int compare(Map.Entry<UUID, PendingWrite> a, Map.Entry<UUID, PendingWrite> b) {
+            return Long.compare(a.getValue().sequence, b.getValue().sequence);
+        }
+    };
+}
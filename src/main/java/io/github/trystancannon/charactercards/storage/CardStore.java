@@ -0,0 +1,90 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Trystan Cannon.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.trystancannon.charactercards.storage;
+
+import io.github.trystancannon.charactercards.card.CharacterCard;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Where the plugin keeps its cards between restarts.
+ * 
+ * Saves, deletes and flushes come from one thread at a time: while enabling,
+ * or from the save queue's writer task. Single cards may be loaded from any
+ * thread at the same time, but never one which is being written.
+ * 
+ * @author Trystan Cannon
+ */
+public interface CardStore {
+    /**
+     * Reads every saved card. The plugin itself loads cards one at a time, as
+     * their players are needed.
+     * 
+     * @return Saved cards, keyed by the ids of the players who own them.
+     * @throws IOException
+     * @throws InterruptedException If the calling thread is interrupted while loading.
+     */
+    Map<UUID, CharacterCard> loadAll() throws IOException, InterruptedException;
+    
+    /**
+     * Reads the saved card of a single player.
+     * 
+     * @param playerId
+     * @return The player's saved card, or <code>null</code> if there is none.
+     * @throws IOException 
+     */
+    CharacterCard load(UUID playerId) throws IOException;
+    
+    /**
+     * Saves a card, replacing the player's previously saved card.
+     * 
+     * @param card
+     * @throws IOException 
+     */
+    void save(CharacterCard card) throws IOException;
+    
+    /**
+     * Deletes the saved card of the player with the given id, if there is one.
+     * 
+     * @param playerId
+     * @throws IOException 
+     */
+    void delete(UUID playerId) throws IOException;
+    
+    /**
+     * Called after a batch of saves and deletes, e.g. to make them durable.
+     * 
+     * @throws IOException 
+     */
+    void flush() throws IOException;
+    
+    /**
+     * Releases any files held by the store. Called when the plugin is disabled.
+     * 
+     * @throws IOException 
+     */
+    void close() throws IOException;
+}
@@ -0,0 +1,309 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Trystan Cannon.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.trystancannon.charactercards.storage;
+
+import io.github.trystancannon.charactercards.card.CharacterCard;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps each card in its own file within a folder, named after the id of the
+ * player who owns it.
+ * 
+ * A card file is never rewritten in place. Each save writes the card to a new
+ * file in the staging folder, and <code>flush</code> syncs every staged file
+ * to disk, then renames each over the card file it replaces. A crash leaves
+ * either the old or the new card, never a torn one, and a whole batch of
+ * saves is synced together instead of once per save. Cards a crash left in the
+ * staging folder are moved into place, or discarded if they're incomplete,
+ * when the store is created.
+ * 
+ * @author Trystan Cannon
+ */
+public final class FileCardStore implements CardStore {
+    /**
+     * Name of the folder, within the card folder, holding cards which are
+     * written but not yet renamed into place.
+     */
+    private static final String STAGING_FOLDER_NAME = "staging";
+    
+    private final File folder;
+    private final File stagingFolder;
+    private final CardFileFormat format;
+    private final Logger logger;
+    
+    /**
+     * Staged files which the next flush moves into place, keyed by the id of
+     * the player who owns the card. Read by loads from any thread.
+     */
+    private final ConcurrentHashMap<UUID, File> stagedFiles = new ConcurrentHashMap<>();
+    
+    public FileCardStore(File folder, CardFileFormat format, Logger logger) {
+        this.folder = folder;
+        this.stagingFolder = new File(folder, STAGING_FOLDER_NAME);
+        this.format = format;
+        this.logger = logger;
+        
+        recoverStagedFiles();
+    }
+    
+    /**
+     * @return Format of the card files.
+     */
+    public CardFileFormat getFormat() {
+        return format;
+    }
+    
+    @Override
+    public Map<UUID, CharacterCard> loadAll() throws IOException, InterruptedException {
+        Map<UUID, CharacterCard> cards = new CardLoader(logger, format).loadAll(folder);
+        
+        // Staged cards are newer than the ones in place.
+        for (UUID playerId : stagedFiles.keySet()) {
+            CharacterCard card = load(playerId);
+            
+            if (card != null) {
+                cards.put(playerId, card);
+            }
+        }
+        
+        return cards;
+    }
+    
+    @Override
+    public CharacterCard load(UUID playerId) throws IOException {
+        File stagedFile = stagedFiles.get(playerId);
+        
+        if (stagedFile != null) {
+            try {
+                CharacterCard card = read(stagedFile);
+                
+                if (card != null || stagedFiles.get(playerId) == stagedFile) {
+                    return card;
+                }
+            } catch (FileNotFoundException | NoSuchFileException movedIntoPlace) {
+                // A flush renamed the file in the meantime. Read it from its place.
+            }
+        }
+        
+        File file = format.getFile(folder, playerId);
+        
+        if (!file.exists()) {
+            return null;
+        }
+        
+        return read(file);
+    }
+    
+    /**
+     * Writes the card to the staging folder. It replaces the player's saved
+     * card at the next flush.
+     * 
+     * @param card
+     * @throws IOException 
+     */
+    @Override
+    public void save(CharacterCard card) throws IOException {
+        if (!stagingFolder.isDirectory() && !stagingFolder.mkdirs()) {
+            throw new IOException("Failed to create " + stagingFolder + ".");
+        }
+        
+        File stagedFile = format.getFile(stagingFolder, card.getPlayerId());
+        
+        try {
+            format.write(card, stagedFile);
+        } catch (IOException failure) {
+            // Don't leave a partial card behind for load or the next flush.
+            stagedFiles.remove(card.getPlayerId());
+            stagedFile.delete();
+            throw failure;
+        }
+        
+        stagedFiles.put(card.getPlayerId(), stagedFile);
+    }
+    
+    @Override
+    public void delete(UUID playerId) throws IOException {
+        File stagedFile = stagedFiles.remove(playerId);
+        
+        if (stagedFile != null) {
+            stagedFile.delete();
+        }
+        
+        File file = format.getFile(folder, playerId);
+        
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Failed to delete " + file + ".");
+        }
+    }
+    
+    /**
+     * Syncs every staged card to disk, then renames each over the card it
+     * replaces. Cards which fail stay staged for the next flush.
+     * 
+     * @throws IOException If any card couldn't be moved into place.
+     */
+    @Override
+    public void flush() throws IOException {
+        if (stagedFiles.isEmpty()) {
+            return;
+        }
+        
+        List<Map.Entry<UUID, File>> synced = new ArrayList<>(stagedFiles.size());
+        IOException firstFailure = null;
+        
+        // Sync every file before renaming any, so the disk can write them together.
+        for (Map.Entry<UUID, File> staged : stagedFiles.entrySet()) {
+            try {
+                sync(staged.getValue().toPath(), StandardOpenOption.WRITE);
+                synced.add(staged);
+            } catch (IOException failure) {
+                firstFailure = firstFailure == null ? failure : firstFailure;
+            }
+        }
+        
+        for (Map.Entry<UUID, File> staged : synced) {
+            File file = format.getFile(folder, staged.getKey());
+            
+            try {
+                Files.move(staged.getValue().toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                stagedFiles.remove(staged.getKey(), staged.getValue());
+            } catch (IOException failure) {
+                firstFailure = firstFailure == null ? failure : firstFailure;
+            }
+        }
+        
+        // Make the renames themselves durable. Not every platform can sync a
+        // folder, e.g. Windows, where the renames are durable anyway.
+        try {
+            sync(folder.toPath(), StandardOpenOption.READ);
+        } catch (IOException unsupported) {
+        }
+        
+        if (firstFailure != null) {
+            throw new IOException("Failed to move " + stagedFiles.size() + " saved cards into place.", firstFailure);
+        }
+    }
+    
+    @Override
+    public void close() {
+    }
+    
+    /**
+     * Moves the cards left in the staging folder by a crash into place. They
+     * were saved after the cards in place, so they're newer. A staged file
+     * which doesn't read back as a card was torn by the crash and is deleted.
+     * A card which can't be moved stays staged for the next flush.
+     */
+    private void recoverStagedFiles() {
+        File[] files = stagingFolder.listFiles();
+        
+        if (files == null || files.length == 0) {
+            return;
+        }
+        
+        int recoveredCount = 0;
+        int discardedCount = 0;
+        
+        for (File stagedFile : files) {
+            CardFileFormat stagedFormat = null;
+            CharacterCard card = null;
+            
+            for (CardFileFormat candidate : CardFileFormat.values()) {
+                if (stagedFile.getName().endsWith(candidate.getExtension())) {
+                    stagedFormat = candidate;
+                }
+            }
+            
+            if (stagedFormat != null) {
+                try {
+                    card = stagedFormat.read(stagedFile);
+                } catch (IOException incomplete) {
+                }
+            }
+            
+            if (card == null) {
+                logger.log(Level.WARNING, "Discarding the incomplete staged card file {0}.", stagedFile.getName());
+                
+                if (!stagedFile.delete()) {
+                    logger.log(Level.WARNING, "Failed to delete {0}.", stagedFile);
+                }
+                
+                discardedCount++;
+                continue;
+            }
+            
+            UUID playerId = card.getPlayerId();
+            
+            try {
+                // The card format was changed since the card was staged.
+                if (stagedFormat != format) {
+                    File convertedFile = format.getFile(stagingFolder, playerId);
+                    format.write(card, convertedFile);
+                    Files.delete(stagedFile.toPath());
+                    stagedFile = convertedFile;
+                }
+                
+                sync(stagedFile.toPath(), StandardOpenOption.WRITE);
+                Files.move(stagedFile.toPath(), format.getFile(folder, playerId).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                recoveredCount++;
+            } catch (IOException failure) {
+                logger.log(Level.WARNING, "Failed to recover the staged card of " + playerId + ". It will be retried at the next flush.", failure);
+                stagedFiles.put(playerId, stagedFile);
+            }
+        }
+        
+        try {
+            sync(folder.toPath(), StandardOpenOption.READ);
+        } catch (IOException unsupported) {
+        }
+        
+        logger.log(Level.INFO, "Recovered {0} cards staged before the last shutdown, discarded {1} incomplete ones.", new Object[] {recoveredCount, discardedCount});
+    }
+    
+    private CharacterCard read(File file) throws IOException {
+        return format.read(file);
+    }
+    
+    private static void sync(Path path, StandardOpenOption mode) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, mode)) {
+            channel.force(true);
+        }
+    }
+}
@@ -0,0 +1,483 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Trystan Cannon.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.trystancannon.charactercards.storage;
+
+import io.github.trystancannon.charactercards.card.CharacterCard;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps every card in a single append-only journal file.
+ * 
+ * Each save or delete appends one record to the end of the journal:
+ * 
+ * int     payload length
+ * int     CRC32 of the payload
+ * byte    record type: 1 for a save, 2 for a delete
+ * ...     save: the card in <code>BinaryCardFormat</code>
+ *         delete: the player id, most significant bits then least significant bits
+ * 
+ * The newest record for a player wins. An in-memory index maps each player id
+ * to its newest save record. Once more than half of the journal is made of
+ * replaced records, it is compacted by copying the live records to a new file.
+ * 
+ * A record which was only partially written, e.g. because the server crashed,
+ * is detected by its length or checksum when the journal is opened, and the
+ * journal is truncated just before it. Such a record is always the last one.
+ * A bad record followed by more data means the journal itself is damaged, so
+ * it is copied aside and refused rather than cut short.
+ * 
+ * @author Trystan Cannon
+ */
+public final class JournalCardStore implements CardStore {
+    private static final byte RECORD_SAVE = 1;
+    private static final byte RECORD_DELETE = 2;
+    
+    /**
+     * Length of the payload length and checksum which precede every payload.
+     */
+    private static final int RECORD_HEADER_LENGTH = 8;
+    
+    /**
+     * Largest payload a record may have. Anything larger is treated as corrupt.
+     */
+    private static final int MAX_PAYLOAD_LENGTH = 16 * 1024 * 1024;
+    
+    /**
+     * The journal is never compacted while it holds less than this many bytes
+     * of replaced records.
+     */
+    private static final long MIN_COMPACTION_GARBAGE = 1024 * 1024;
+    
+    private final File file;
+    private final Logger logger;
+    
+    private FileChannel channel;
+    
+    /**
+     * Location of the newest save record of every player who has a card.
+     */
+    private final HashMap<UUID, RecordLocation> index = new HashMap<>();
+    
+    /**
+     * Position just past the last valid record.
+     */
+    private long endPosition;
+    
+    /**
+     * Total length of the records which have been replaced or deleted.
+     */
+    private long garbageLength;
+    
+    public JournalCardStore(File file, Logger logger) {
+        this.file = file;
+        this.logger = logger;
+    }
+    
+    /**
+     * Opens the journal, creating it if it doesn't exist, and builds the index.
+     * A torn record at the end of the journal is discarded.
+     * 
+     * @throws IOException If the journal can't be read, or has a corrupt
+     * record before its end. A copy of a corrupt journal is left next to it.
+     */
+    public synchronized void open() throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        
+        try {
+            rebuildIndex();
+        } catch (IOException failure) {
+            channel.close();
+            channel = null;
+            throw failure;
+        }
+    }
+    
+    @Override
+    public synchronized Map<UUID, CharacterCard> loadAll() throws IOException {
+        HashMap<UUID, CharacterCard> cards = new HashMap<>();
+        long position = 0;
+        
+        // Read the journal front to back, decoding only the newest record of each card.
+        while (position < endPosition) {
+            ByteBuffer record = readRecord(position, endPosition);
+            
+            if (record == null) {
+                throw new IOException("The card journal was modified while it was open.");
+            }
+            
+            if (record.get() == RECORD_SAVE) {
+                UUID playerId = getSavedCardId(record);
+                RecordLocation location = index.get(playerId);
+                
+                if (location != null && location.position == position) {
+                    cards.put(playerId, BinaryCardFormat.decode(record));
+                }
+            }
+            
+            position += record.limit();
+        }
+        
+        return cards;
+    }
+    
+    @Override
+    public synchronized CharacterCard load(UUID playerId) throws IOException {
+        RecordLocation location = index.get(playerId);
+        
+        if (location == null) {
+            return null;
+        }
+        
+        ByteBuffer record = readRecord(location.position, endPosition);
+        
+        if (record == null) {
+            throw new IOException("The card journal was modified while it was open.");
+        }
+        
+        // Skip the record type; indexed records are always saves.
+        record.get();
+        return BinaryCardFormat.decode(record);
+    }
+    
+    @Override
+    public synchronized void save(CharacterCard card) throws IOException {
+        ByteBuffer encodedCard = BinaryCardFormat.encode(card);
+        RecordLocation location = appendRecord(RECORD_SAVE, encodedCard);
+        RecordLocation replaced = index.put(card.getPlayerId(), location);
+        
+        if (replaced != null) {
+            garbageLength += replaced.length;
+        }
+    }
+    
+    @Override
+    public synchronized void delete(UUID playerId) throws IOException {
+        if (!index.containsKey(playerId)) {
+            return;
+        }
+        
+        ByteBuffer id = ByteBuffer.allocate(16);
+        id.putLong(playerId.getMostSignificantBits());
+        id.putLong(playerId.getLeastSignificantBits());
+        // Through Buffer, like in BinaryCardFormat, to run on Java 8.
+        ((Buffer) id).flip();
+        
+        RecordLocation location = appendRecord(RECORD_DELETE, id);
+        garbageLength += index.remove(playerId).length + location.length;
+    }
+    
+    /**
+     * Forces the appended records to disk, then compacts the journal if enough
+     * of it is made of replaced records.
+     * 
+     * @throws IOException 
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        channel.force(false);
+        
+        if (garbageLength >= MIN_COMPACTION_GARBAGE && garbageLength > endPosition / 2) {
+            compact();
+        }
+    }
+    
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.force(true);
+            channel.close();
+            channel = null;
+        }
+    }
+    
+    /**
+     * Rewrites the journal with only the newest record of each card, then
+     * swaps it in place of the old journal.
+     * 
+     * @throws IOException 
+     */
+    private void compact() throws IOException {
+        long oldLength = endPosition;
+        File compactFile = new File(file.getPath() + ".compact");
+        
+        try (FileChannel compactChannel = FileChannel.open(compactFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long position = 0;
+            
+            while (position < endPosition) {
+                ByteBuffer record = readRecord(position, endPosition);
+                
+                if (record == null) {
+                    throw new IOException("The card journal was modified while it was open.");
+                }
+                
+                if (record.get() == RECORD_SAVE) {
+                    RecordLocation location = index.get(getSavedCardId(record));
+                    
+                    if (location != null && location.position == position) {
+                        ((Buffer) record).rewind();
+                        writeFully(compactChannel, record, compactChannel.size());
+                    }
+                }
+                
+                position += record.limit();
+            }
+            
+            compactChannel.force(true);
+        }
+        
+        channel.close();
+        
+        try {
+            Files.move(compactFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            // Reopens the old journal if the compacted one couldn't be swapped in.
+            open();
+        }
+        
+        logger.log(Level.INFO, "Compacted the card journal from {0,number,#} to {1,number,#} bytes.", new Object[] {oldLength, endPosition});
+    }
+    
+    /**
+     * Reads the journal from the start and indexes the newest record of every
+     * card. Truncates the journal at an invalid record only if it is a torn
+     * write at the end of the journal.
+     * 
+     * @throws IOException If an invalid record is followed by more data.
+     */
+    private void rebuildIndex() throws IOException {
+        index.clear();
+        garbageLength = 0;
+        
+        long journalLength = channel.size();
+        long position = 0;
+        
+        while (position < journalLength) {
+            ByteBuffer record = readRecord(position, journalLength);
+            byte type = record == null ? 0 : record.get();
+            
+            if (type != RECORD_SAVE && type != RECORD_DELETE) {
+                if (!isTornTail(position, journalLength)) {
+                    File copy = new File(file.getPath() + ".corrupt-" + System.currentTimeMillis());
+                    Files.copy(file.toPath(), copy.toPath());
+                    
+                    throw new IOException("The card journal has a corrupt record at byte " + position + " of " + journalLength
+                            + ", followed by more records. It was copied to " + copy.getName() + " and left as it is.");
+                }
+                
+                logger.log(Level.WARNING, "The card journal has a torn record at byte {0,number,#}. Discarding the last {1,number,#} bytes of the journal.", new Object[] {position, journalLength - position});
+                channel.truncate(position);
+                channel.force(true);
+                break;
+            }
+            
+            RecordLocation location = new RecordLocation(position, record.limit());
+            RecordLocation replaced;
+            
+            if (type == RECORD_SAVE) {
+                replaced = index.put(getSavedCardId(record), location);
+            } else {
+                replaced = index.remove(new UUID(record.getLong(), record.getLong()));
+                garbageLength += location.length;
+            }
+            
+            if (replaced != null) {
+                garbageLength += replaced.length;
+            }
+            
+            position += location.length;
+        }
+        
+        endPosition = position;
+    }
+    
+    /**
+     * Checks whether an invalid record is the last one in the journal, i.e. a
+     * write which was cut off. That is the case if its header is incomplete,
+     * its length runs to or past the end of the journal, or everything from it
+     * on is zeros, as some file systems leave after a crash.
+     * 
+     * @param position Position of the invalid record.
+     * @param journalLength
+     * @return Whether the journal can be truncated at the record.
+     * @throws IOException 
+     */
+    private boolean isTornTail(long position, long journalLength) throws IOException {
+        if (journalLength - position < RECORD_HEADER_LENGTH) {
+            return true;
+        }
+        
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_LENGTH);
+        readFully(header, position);
+        int payloadLength = header.getInt(0);
+        
+        if (payloadLength >= 1 && payloadLength <= MAX_PAYLOAD_LENGTH && position + RECORD_HEADER_LENGTH + payloadLength >= journalLength) {
+            return true;
+        }
+        
+        ByteBuffer rest = ByteBuffer.allocate(64 * 1024);
+        
+        for (long restPosition = position; restPosition < journalLength; restPosition += rest.limit()) {
+            ((Buffer) rest).clear();
+            ((Buffer) rest).limit((int) Math.min(rest.capacity(), journalLength - restPosition));
+            readFully(rest, restPosition);
+            
+            while (rest.hasRemaining()) {
+                if (rest.get() != 0) {
+                    return false;
+                }
+            }
+        }
+        
+        return true;
+    }
+    
+    /**
+     * Reads and verifies the record at the given position.
+     * 
+     * @param position
+     * @param limit Position past which the record may not extend.
+     * @return The whole record, positioned at the start of its payload, or
+     * <code>null</code> if the record is incomplete or its checksum doesn't match.
+     * @throws IOException 
+     */
+    private ByteBuffer readRecord(long position, long limit) throws IOException {
+        if (limit - position < RECORD_HEADER_LENGTH) {
+            return null;
+        }
+        
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_LENGTH);
+        readFully(header, position);
+        
+        int payloadLength = header.getInt(0);
+        int checksum = header.getInt(4);
+        
+        if (payloadLength < 1 || payloadLength > MAX_PAYLOAD_LENGTH || payloadLength > limit - position - RECORD_HEADER_LENGTH) {
+            return null;
+        }
+        
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_LENGTH + payloadLength);
+        readFully(record, position);
+        
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER_LENGTH, payloadLength);
+        
+        if ((int) crc.getValue() != checksum) {
+            return null;
+        }
+        
+        ((Buffer) record).position(RECORD_HEADER_LENGTH);
+        return record;
+    }
+    
+    /**
+     * Appends a record to the end of the journal.
+     * 
+     * @param type
+     * @param body Rest of the payload after the record type.
+     * @return Location of the appended record.
+     * @throws IOException 
+     */
+    private RecordLocation appendRecord(byte type, ByteBuffer body) throws IOException {
+        int payloadLength = 1 + body.remaining();
+        ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_LENGTH + payloadLength);
+        record.putInt(payloadLength);
+        record.putInt(0);
+        record.put(type);
+        record.put(body);
+        
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), RECORD_HEADER_LENGTH, payloadLength);
+        record.putInt(4, (int) crc.getValue());
+        ((Buffer) record).flip();
+        
+        try {
+            writeFully(channel, record, endPosition);
+        } catch (IOException failure) {
+            // Drop whatever part of the record made it, so the next one lines up.
+            channel.truncate(endPosition);
+            throw failure;
+        }
+        
+        RecordLocation location = new RecordLocation(endPosition, record.limit());
+        endPosition += location.length;
+        
+        return location;
+    }
+    
+    /**
+     * Reads the player id of a save record's card without decoding the card.
+     * 
+     * @param record Record, positioned just past the record type.
+     * @return Player id.
+     */
+    private static UUID getSavedCardId(ByteBuffer record) {
+        // Skip the magic number and version of the encoded card.
+        int idStart = record.position() + 5;
+        return new UUID(record.getLong(idStart), record.getLong(idStart + 8));
+    }
+    
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of the card journal.");
+            }
+        }
+        
+        ((Buffer) buffer).flip();
+    }
+    
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+    
+    /**
+     * Where a record starts in the journal, and how long it is.
+     */
+    private static final class RecordLocation {
+        private final long position;
+        private final int length;
+        
+        private RecordLocation(long position, int length) {
+            this.position = position;
+            this.length = length;
+        }
+    }
+}
@@ -0,0 +1,325 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Trystan Cannon.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.trystancannon.charactercards.storage;
+
+import io.github.trystancannon.charactercards.card.CharacterCard;
+import io.github.trystancannon.charactercards.user.Gender;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Keeps every card in an embedded SQLite database file, one row per card.
+ * 
+ * The name and race columns are indexed, so the database can be queried for
+ * cards without loading all of them. Saves and deletes are collected and then
+ * written in batches, within one transaction, by <code>flush</code>.
+ * 
+ * Uses the SQLite JDBC driver which ships with CraftBukkit and Spigot, which
+ * is sqlite-jdbc 3.7.2 as of 1.8. See <code>isDriverAvailable</code>.
+ * 
+ * @author Trystan Cannon
+ */
+public final class SqlCardStore implements CardStore {
+    private static final String SQLITE_DRIVER = "org.sqlite.JDBC";
+    
+    private static final String CREATE_TABLE = "CREATE TABLE IF NOT EXISTS cards ("
+            + "player_id TEXT PRIMARY KEY NOT NULL, "
+            + "name TEXT, "
+            + "age INTEGER NOT NULL, "
+            + "sex TEXT, "
+            + "race TEXT, "
+            + "description TEXT)";
+    private static final String CREATE_NAME_INDEX = "CREATE INDEX IF NOT EXISTS cards_name ON cards (name)";
+    private static final String CREATE_RACE_INDEX = "CREATE INDEX IF NOT EXISTS cards_race ON cards (race)";
+    
+    private static final String SELECT_ALL = "SELECT player_id, name, age, sex, race, description FROM cards";
+    private static final String SELECT_ONE = SELECT_ALL + " WHERE player_id = ?";
+    private static final String UPSERT = "INSERT OR REPLACE INTO cards (player_id, name, age, sex, race, description) VALUES (?, ?, ?, ?, ?, ?)";
+    private static final String DELETE = "DELETE FROM cards WHERE player_id = ?";
+    
+    private final File databaseFile;
+    private final int poolSize;
+    
+    private SqlConnectionPool pool;
+    
+    /**
+     * Saves and deletes waiting for the next flush, in the order they were
+     * made. A <code>null</code> card is a delete. Only the latest change to
+     * each card is kept.
+     */
+    private final LinkedHashMap<UUID, CharacterCard> pendingChanges = new LinkedHashMap<>();
+    
+    /**
+     * @param databaseFile
+     * @param poolSize Number of database connections; at least one per thread
+     * which uses the store at the same time.
+     */
+    public SqlCardStore(File databaseFile, int poolSize) {
+        this.databaseFile = databaseFile;
+        this.poolSize = poolSize;
+    }
+    
+    /**
+     * @return Whether the server has the SQLite JDBC driver this store needs.
+     */
+    public static boolean isDriverAvailable() {
+        try {
+            Class.forName(SQLITE_DRIVER);
+            return true;
+        } catch (ClassNotFoundException missingDriver) {
+            return false;
+        }
+    }
+    
+    /**
+     * Opens the database, creating the table and its indexes if needed.
+     * 
+     * @throws IOException 
+     */
+    public void open() throws IOException {
+        try {
+            Class.forName(SQLITE_DRIVER);
+        } catch (ClassNotFoundException missingDriver) {
+            throw new IOException("The SQLite JDBC driver isn't available on this server.", missingDriver);
+        }
+        
+        try {
+            pool = new SqlConnectionPool("jdbc:sqlite:" + databaseFile.getAbsolutePath(), poolSize);
+            Connection connection = pool.borrow();
+            
+            try (Statement statement = connection.createStatement()) {
+                statement.execute(CREATE_TABLE);
+                statement.execute(CREATE_NAME_INDEX);
+                statement.execute(CREATE_RACE_INDEX);
+            } finally {
+                pool.release(connection);
+            }
+        } catch (SQLException failure) {
+            throw new IOException("Failed to open the card database.", failure);
+        }
+    }
+    
+    @Override
+    public Map<UUID, CharacterCard> loadAll() throws IOException {
+        HashMap<UUID, CharacterCard> cards = new HashMap<>();
+        
+        try {
+            Connection connection = pool.borrow();
+            
+            try (Statement statement = connection.createStatement(); ResultSet rows = statement.executeQuery(SELECT_ALL)) {
+                while (rows.next()) {
+                    CharacterCard card = readCard(rows);
+                    cards.put(card.getPlayerId(), card);
+                }
+            } finally {
+                pool.release(connection);
+            }
+        } catch (SQLException failure) {
+            throw new IOException("Failed to load the cards from the database.", failure);
+        }
+        
+        return cards;
+    }
+    
+    @Override
+    public CharacterCard load(UUID playerId) throws IOException {
+        // Changes waiting for the next flush are newer than the database.
+        synchronized (pendingChanges) {
+            if (pendingChanges.containsKey(playerId)) {
+                return pendingChanges.get(playerId);
+            }
+        }
+        
+        try {
+            Connection connection = pool.borrow();
+            
+            try (PreparedStatement select = connection.prepareStatement(SELECT_ONE)) {
+                select.setString(1, playerId.toString());
+                
+                try (ResultSet rows = select.executeQuery()) {
+                    return rows.next() ? readCard(rows) : null;
+                }
+            } finally {
+                pool.release(connection);
+            }
+        } catch (SQLException failure) {
+            throw new IOException("Failed to load the card of " + playerId + " from the database.", failure);
+        }
+    }
+    
+    /**
+     * Queues the card to be written by the next <code>flush</code>.
+     * 
+     * @param card 
+     */
+    @Override
+    public void save(CharacterCard card) {
+        synchronized (pendingChanges) {
+            pendingChanges.remove(card.getPlayerId());
+            pendingChanges.put(card.getPlayerId(), card);
+        }
+    }
+    
+    /**
+     * Queues the card to be deleted by the next <code>flush</code>.
+     * 
+     * @param playerId 
+     */
+    @Override
+    public void delete(UUID playerId) {
+        synchronized (pendingChanges) {
+            pendingChanges.remove(playerId);
+            pendingChanges.put(playerId, null);
+        }
+    }
+    
+    /**
+     * Writes the queued saves and deletes in one transaction. If it fails, the
+     * changes stay queued for the next flush.
+     * 
+     * @throws IOException 
+     */
+    @Override
+    public void flush() throws IOException {
+        List<CharacterCard> saves = new ArrayList<>();
+        List<UUID> deletes = new ArrayList<>();
+        
+        synchronized (pendingChanges) {
+            if (pendingChanges.isEmpty()) {
+                return;
+            }
+            
+            for (Map.Entry<UUID, CharacterCard> change : pendingChanges.entrySet()) {
+                if (change.getValue() == null) {
+                    deletes.add(change.getKey());
+                } else {
+                    saves.add(change.getValue());
+                }
+            }
+        }
+        
+        try {
+            Connection connection = pool.borrow();
+            
+            try {
+                connection.setAutoCommit(false);
+                
+                // Only the latest change to each card is queued, so the order
+                // of the two batches doesn't matter.
+                try (PreparedStatement upsert = connection.prepareStatement(UPSERT); PreparedStatement delete = connection.prepareStatement(DELETE)) {
+                    for (CharacterCard card : saves) {
+                        String description = card.getDescription();
+                        
+                        upsert.setString(1, card.getPlayerId().toString());
+                        upsert.setString(2, card.getName());
+                        upsert.setInt(3, card.getAge());
+                        upsert.setString(4, card.getSex() == null ? null : card.getSex().toString());
+                        upsert.setString(5, card.getRace());
+                        upsert.setString(6, description.isEmpty() ? null : description);
+                        upsert.addBatch();
+                    }
+                    
+                    for (UUID playerId : deletes) {
+                        delete.setString(1, playerId.toString());
+                        delete.addBatch();
+                    }
+                    
+                    upsert.executeBatch();
+                    delete.executeBatch();
+                }
+                
+                connection.commit();
+            } catch (SQLException failure) {
+                try {
+                    connection.rollback();
+                } catch (SQLException rollbackFailure) {
+                    failure.addSuppressed(rollbackFailure);
+                }
+                
+                throw failure;
+            } finally {
+                boolean reusable = false;
+                
+                try {
+                    connection.setAutoCommit(true);
+                    reusable = true;
+                } finally {
+                    // A connection stuck outside auto-commit would hold every
+                    // later read in one stale transaction, so it's replaced.
+                    if (reusable) {
+                        pool.release(connection);
+                    } else {
+                        pool.discard(connection);
+                    }
+                }
+            }
+        } catch (SQLException failure) {
+            throw new IOException("Failed to write the cards to the database.", failure);
+        }
+        
+        // Forget the written changes, unless a card changed again in the meantime.
+        synchronized (pendingChanges) {
+            for (CharacterCard card : saves) {
+                if (pendingChanges.get(card.getPlayerId()) == card) {
+                    pendingChanges.remove(card.getPlayerId());
+                }
+            }
+            
+            for (UUID playerId : deletes) {
+                if (pendingChanges.containsKey(playerId) && pendingChanges.get(playerId) == null) {
+                    pendingChanges.remove(playerId);
+                }
+            }
+        }
+    }
+    
+    @Override
+    public void close() {
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        }
+    }
+    
+    private static CharacterCard readCard(ResultSet row) throws SQLException {
+        return new CharacterCard(UUID.fromString(row.getString("player_id")),
+                row.getString("name"),
+                row.getInt("age"),
+                Gender.valueOf(row.getString("sex")),
+                row.getString("race"),
+                row.getString("description"));
+    }
+}
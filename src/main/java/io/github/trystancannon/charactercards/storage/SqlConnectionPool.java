@@ -0,0 +1,169 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Trystan Cannon.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.trystancannon.charactercards.storage;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fixed size pool of connections to one SQLite database file.
+ * 
+ * Every connection uses write-ahead logging, so the pool's connections can
+ * read while another one is writing.
+ * 
+ * @author Trystan Cannon
+ */
+public final class SqlConnectionPool {
+    /**
+     * How long a borrower waits for a connection, and how long a connection
+     * waits for SQLite's write lock, before giving up.
+     */
+    private static final int TIMEOUT_SECONDS = 10;
+    
+    private final String jdbcUrl;
+    private final BlockingQueue<Connection> idleConnections;
+    private final Connection[] connections;
+    
+    /**
+     * Opens every connection of the pool.
+     * 
+     * @param jdbcUrl
+     * @param size Number of connections.
+     * @throws SQLException 
+     */
+    public SqlConnectionPool(String jdbcUrl, int size) throws SQLException {
+        this.jdbcUrl = jdbcUrl;
+        idleConnections = new ArrayBlockingQueue<>(size);
+        connections = new Connection[size];
+        
+        try {
+            for (int connectionIndex = 0; connectionIndex < size; connectionIndex++) {
+                connections[connectionIndex] = openConnection();
+                idleConnections.add(connections[connectionIndex]);
+            }
+        } catch (SQLException failure) {
+            close();
+            throw failure;
+        }
+    }
+    
+    private Connection openConnection() throws SQLException {
+        Connection connection = DriverManager.getConnection(jdbcUrl);
+        
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA journal_mode=WAL");
+            statement.execute("PRAGMA busy_timeout=" + TimeUnit.SECONDS.toMillis(TIMEOUT_SECONDS));
+        } catch (SQLException failure) {
+            connection.close();
+            throw failure;
+        }
+        
+        return connection;
+    }
+    
+    /**
+     * Takes a connection out of the pool, waiting for one to be returned if
+     * they're all in use. Must be handed back with <code>release</code>.
+     * 
+     * @return Connection.
+     * @throws SQLException If no connection became free in time.
+     */
+    public Connection borrow() throws SQLException {
+        try {
+            Connection connection = idleConnections.poll(TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            
+            if (connection == null) {
+                throw new SQLException("Timed out waiting for a database connection.");
+            }
+            
+            return connection;
+        } catch (InterruptedException interruption) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection.", interruption);
+        }
+    }
+    
+    /**
+     * Returns a borrowed connection to the pool.
+     * 
+     * @param connection 
+     */
+    public void release(Connection connection) {
+        idleConnections.offer(connection);
+    }
+    
+    /**
+     * Closes a borrowed connection which was left in an unknown state, and
+     * puts a new one in the pool in its place. If no new connection can be
+     * opened, the pool is left one connection smaller.
+     * 
+     * @param connection 
+     */
+    public void discard(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException ignored) {
+            // It's being thrown away anyway.
+        }
+        
+        synchronized (connections) {
+            for (int connectionIndex = 0; connectionIndex < connections.length; connectionIndex++) {
+                if (connections[connectionIndex] == connection) {
+                    try {
+                        connections[connectionIndex] = openConnection();
+                        idleConnections.offer(connections[connectionIndex]);
+                    } catch (SQLException failure) {
+                        connections[connectionIndex] = null;
+                    }
+                    
+                    break;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Closes every connection of the pool.
+     */
+    public void close() {
+        synchronized (connections) {
+            for (Connection connection : connections) {
+                if (connection != null) {
+                    try {
+                        connection.close();
+                    } catch (SQLException ignored) {
+                        // Nothing left to do with it.
+                    }
+                }
+            }
+        }
+        
+        idleConnections.clear();
+    }
+}
@@ -23,19 +23,73 @@
  */
 package io.github.trystancannon.charactercards.user;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.TreeMap;
+
 /**
+ * The sex, or gender identity, on a character card.
+ * 
+ * There is one <code>Gender</code> object per identity: <code>MALE</code>,
+ * <code>FEMALE</code>, and any others added from the config. Every word which
+ * selects an identity, e.g. "boy" for <code>MALE</code>, is kept in a single
+ * case-insensitive table, so parsing never creates objects.
+ * 
  * @author Trystan Cannon
  */
-public class Gender {
+public final class Gender {
+    public static final Gender MALE = new Gender("Male", true);
+    public static final Gender FEMALE = new Gender("Female", false);
+    
+    /**
+     * Every identity by every word which selects it, ignoring case. Replaced
+     * rather than changed when identities are added, so it can be read from
+     * any thread.
+     */
+    private static volatile TreeMap<String, Gender> genders = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    
+    static {
+        register(MALE, Arrays.asList("man", "boy"));
+        register(FEMALE, Arrays.asList("woman", "girl"));
+    }
+    
+    private final String name;
     private final boolean isMale;
     
-    public Gender(boolean isMale) {
+    private Gender(String name, boolean isMale) {
+        this.name = name;
         this.isMale = isMale;
     }
     
+    public boolean isMale() {
+        return isMale;
+    }
+    
+    /**
+     * @return Whether this is one of the two built in identities.
+     */
+    public boolean isBinary() {
+        return this == MALE || this == FEMALE;
+    }
+    
+    public String getName() {
+        return name;
+    }
+    
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Gender && ((Gender) other).name.equalsIgnoreCase(name);
+    }
+    
+    @Override
+    public int hashCode() {
+        return name.toLowerCase(Locale.ENGLISH).hashCode();
+    }
+    
     @Override
     public String toString() {
-        return isMale ? "Male" : "Female";
+        return name;
     }
     
     /**
@@ -48,15 +102,57 @@ public class Gender {
      * could be parsed.
      */
     public static Gender parseSex(String sex) {
-        if (sex != null) {
-            if (sex.equalsIgnoreCase("male") || sex.equalsIgnoreCase("man") || sex.equalsIgnoreCase("boy")) {
-                return new Gender(true);
-            }
-            else if (sex.equalsIgnoreCase("female") || sex.equalsIgnoreCase("woman") || sex.equalsIgnoreCase("girl")) {
-                return new Gender(false);
+        return sex == null ? null : genders.get(sex.trim());
+    }
+    
+    /**
+     * Gets the identity with the given name, as saved on a card. Unlike
+     * <code>parseSex</code>, an identity which is no longer in the config is
+     * kept rather than lost.
+     * 
+     * @param name
+     * @return The identity, or <code>null</code> if the name is
+     * <code>null</code> or empty.
+     */
+    public static Gender valueOf(String name) {
+        if (name == null || name.trim().isEmpty()) {
+            return null;
+        }
+        
+        Gender sex = parseSex(name);
+        return sex != null ? sex : new Gender(name.trim(), false);
+    }
+    
+    /**
+     * Adds words which select an identity, e.g. from the config. If the name
+     * is a word for an existing identity, the words are added to it. Otherwise,
+     * a new identity is created with the given name.
+     * 
+     * Words already in use for an identity are not taken over by another.
+     * 
+     * @param name
+     * @param synonyms
+     * @return The identity.
+     */
+    public static synchronized Gender register(String name, Collection<String> synonyms) {
+        Gender sex = parseSex(name);
+        return register(sex != null ? sex : new Gender(name.trim(), false), synonyms);
+    }
+    
+    private static synchronized Gender register(Gender sex, Collection<String> synonyms) {
+        TreeMap<String, Gender> updated = new TreeMap<>(genders);
+        
+        if (!updated.containsKey(sex.name)) {
+            updated.put(sex.name, sex);
+        }
+        
+        for (String synonym : synonyms) {
+            if (synonym != null && !synonym.trim().isEmpty() && !updated.containsKey(synonym.trim())) {
+                updated.put(synonym.trim(), sex);
             }
         }
         
-        return null;
+        genders = updated;
+        return sex;
     }
 }
@@ -0,0 +1,295 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Trystan Cannon.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.trystancannon.charactercards.user;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import org.bukkit.ChatColor;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+/**
+ * Case-insensitive index of the online players by name and by display name,
+ * with color codes removed from display names.
+ * 
+ * Names are indexed as players join and quit. Bukkit has no event for display
+ * name changes, so display names are re-indexed lazily: a match is checked
+ * against the player's current display name, and a miss re-indexes every
+ * display name, at most once per second.
+ * 
+ * Only used from the main thread.
+ * 
+ * @author Trystan Cannon
+ */
+public final class OnlinePlayerIndex implements Listener {
+    /**
+     * Minimum time between two full re-indexes of the display names.
+     */
+    private static final long DISPLAY_NAME_REFRESH_MILLIS = 1000;
+    
+    /**
+     * Online players keyed by lower case name.
+     */
+    private final HashMap<String, Player> playersByName = new HashMap<>();
+    
+    /**
+     * Online players keyed by lower case display name, as of when they were
+     * last indexed.
+     */
+    private final HashMap<String, Player> playersByDisplayName = new HashMap<>();
+    
+    /**
+     * Display name each player was indexed under.
+     */
+    private final HashMap<Player, String> indexedDisplayNames = new HashMap<>();
+    
+    /**
+     * Lower case names and display names, sorted for prefix searches.
+     */
+    private final TreeMap<String, Player> sortedNames = new TreeMap<>();
+    
+    private long lastDisplayNameRefresh = 0;
+    
+    /**
+     * Finds the online player with exactly the given name or display name,
+     * ignoring case.
+     * 
+     * @param name
+     * @return The player, or <code>null</code> if nobody matches.
+     */
+    public Player getPlayer(String name) {
+        String key = toKey(name);
+        Player player = playersByName.get(key);
+        
+        if (player != null) {
+            return player;
+        }
+        
+        player = getByDisplayName(key);
+        
+        if (player == null && refreshDisplayNames()) {
+            player = getByDisplayName(key);
+        }
+        
+        return player;
+    }
+    
+    /**
+     * Like <code>getPlayer</code>, but if nobody matches exactly, a name or
+     * display name which starts with the given one will do, as long as only
+     * one player matches. Only meant for looking players up, never for
+     * changing anything of theirs.
+     * 
+     * @param name
+     * @return The player, or <code>null</code> if nobody or more than one
+     * player matches.
+     */
+    public Player getPlayerByPrefix(String name) {
+        Player player = getPlayer(name);
+        return player != null ? player : getByPrefix(toKey(name));
+    }
+    
+    /**
+     * Adds a player to the index.
+     * 
+     * @param player 
+     */
+    public void add(Player player) {
+        String nameKey = toKey(player.getName());
+        
+        playersByName.put(nameKey, player);
+        sortedNames.put(nameKey, player);
+        indexDisplayName(player);
+    }
+    
+    /**
+     * Removes a player from the index.
+     * 
+     * @param player 
+     */
+    public void remove(Player player) {
+        String nameKey = toKey(player.getName());
+        
+        unindexDisplayName(player);
+        playersByName.remove(nameKey);
+        
+        if (sortedNames.remove(nameKey) != null) {
+            restoreDisplayName(nameKey);
+        }
+    }
+    
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onPlayerJoin(PlayerJoinEvent joinEvent) {
+        add(joinEvent.getPlayer());
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent quitEvent) {
+        remove(quitEvent.getPlayer());
+    }
+    
+    /**
+     * @param key Lower case display name.
+     * @return Player indexed under the display name, if it's still theirs.
+     */
+    private Player getByDisplayName(String key) {
+        Player player = playersByDisplayName.get(key);
+        return player != null && toDisplayKey(player).equals(key) ? player : null;
+    }
+    
+    /**
+     * @param prefix Lower case prefix.
+     * @return The only player whose name or display name starts with the
+     * prefix, or <code>null</code> if there isn't exactly one.
+     */
+    private Player getByPrefix(String prefix) {
+        if (prefix.isEmpty()) {
+            return null;
+        }
+        
+        SortedMap<String, Player> matches = sortedNames.subMap(prefix, prefix + Character.MAX_VALUE);
+        Player match = null;
+        
+        // A player matches twice if both their name and display name match.
+        for (Map.Entry<String, Player> candidate : matches.entrySet()) {
+            Player player = candidate.getValue();
+            
+            if (player == match) {
+                continue;
+            }
+            
+            // Skip display names which have changed since they were indexed.
+            if (!candidate.getKey().equals(toKey(player.getName())) && !candidate.getKey().equals(toDisplayKey(player))) {
+                continue;
+            }
+            
+            if (match != null) {
+                return null;
+            }
+            
+            match = player;
+        }
+        
+        return match;
+    }
+    
+    /**
+     * Re-indexes the display name of every player, unless that was done less
+     * than a second ago.
+     * 
+     * @return Whether the display names were re-indexed.
+     */
+    private boolean refreshDisplayNames() {
+        long now = System.currentTimeMillis();
+        
+        if (now - lastDisplayNameRefresh < DISPLAY_NAME_REFRESH_MILLIS) {
+            return false;
+        }
+        
+        lastDisplayNameRefresh = now;
+        
+        for (Player player : playersByName.values()) {
+            if (!toDisplayKey(player).equals(indexedDisplayNames.get(player))) {
+                unindexDisplayName(player);
+                indexDisplayName(player);
+            }
+        }
+        
+        return true;
+    }
+    
+    private void indexDisplayName(Player player) {
+        String displayKey = toDisplayKey(player);
+        
+        indexedDisplayNames.put(player, displayKey);
+        playersByDisplayName.put(displayKey, player);
+        
+        if (!sortedNames.containsKey(displayKey)) {
+            sortedNames.put(displayKey, player);
+        }
+    }
+    
+    private void unindexDisplayName(Player player) {
+        String displayKey = indexedDisplayNames.remove(player);
+        
+        if (displayKey == null) {
+            return;
+        }
+        
+        boolean removed = false;
+        
+        // Another player with the same display name may own the key by now.
+        if (playersByDisplayName.get(displayKey) == player) {
+            playersByDisplayName.remove(displayKey);
+            removed = true;
+        }
+        
+        // The key may also be somebody's name, which stays.
+        if (sortedNames.get(displayKey) == player && !displayKey.equals(toKey(player.getName()))) {
+            sortedNames.remove(displayKey);
+            removed = true;
+        }
+        
+        if (removed) {
+            restoreDisplayName(displayKey);
+        }
+    }
+    
+    /**
+     * Points a key which was just removed from the index at another player
+     * whose display name is indexed under it, if there is one.
+     * 
+     * @param key 
+     */
+    private void restoreDisplayName(String key) {
+        for (Map.Entry<Player, String> indexed : indexedDisplayNames.entrySet()) {
+            if (indexed.getValue().equals(key)) {
+                if (!playersByDisplayName.containsKey(key)) {
+                    playersByDisplayName.put(key, indexed.getKey());
+                }
+                
+                if (!sortedNames.containsKey(key)) {
+                    sortedNames.put(key, indexed.getKey());
+                }
+                
+                return;
+            }
+        }
+    }
+    
+    private static String toDisplayKey(Player player) {
+        return toKey(ChatColor.stripColor(player.getDisplayName()));
+    }
+    
+    private static String toKey(String name) {
+        return name.toLowerCase(Locale.ENGLISH);
+    }
+}
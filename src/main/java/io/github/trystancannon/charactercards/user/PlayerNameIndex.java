@@ -0,0 +1,235 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Trystan Cannon.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.trystancannon.charactercards.user;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+/**
+ * Case-insensitive index from player names to player ids, which also covers
+ * players who are offline.
+ * 
+ * The index is kept up to date as players join and quit, and the last known
+ * name of every player is persisted to a file so lookups keep working across
+ * restarts.
+ * 
+ * Each line of the file is: id, a tab, the last known name, a tab, then the
+ * time the player was last seen. When two players claim the same name, the one
+ * seen most recently owns it.
+ * 
+ * @author Trystan Cannon
+ */
+public final class PlayerNameIndex implements Listener {
+    /**
+     * Player ids keyed by lower case player name.
+     */
+    private final ConcurrentHashMap<String, UUID> idsByName = new ConcurrentHashMap<>();
+    
+    /**
+     * Last known name of each player, as they spell it.
+     */
+    private final ConcurrentHashMap<UUID, String> namesById = new ConcurrentHashMap<>();
+    
+    /**
+     * Time each player was last seen, in milliseconds since the epoch.
+     */
+    private final ConcurrentHashMap<UUID, Long> lastSeenById = new ConcurrentHashMap<>();
+    
+    /**
+     * Whether the index has changed since it was last loaded or saved.
+     */
+    private volatile boolean changed = false;
+    
+    /**
+     * Retrieves the id of the player with the given name, ignoring case.
+     * 
+     * @param name
+     * @return Id of the player, or <code>null</code> if the name is unknown.
+     */
+    public UUID getPlayerId(String name) {
+        return name == null ? null : idsByName.get(toKey(name));
+    }
+    
+    /**
+     * @param playerId
+     * @return Last known name of the player, or <code>null</code> if unknown.
+     */
+    public String getLastKnownName(UUID playerId) {
+        return namesById.get(playerId);
+    }
+    
+    /**
+     * Records the current name of a player, replacing their old name if it
+     * changed.
+     * 
+     * @param playerId
+     * @param name 
+     */
+    public void update(UUID playerId, String name) {
+        update(playerId, name, System.currentTimeMillis());
+    }
+    
+    /**
+     * Records the name a player had when they were last seen. The name is only
+     * claimed if no other player was seen with it more recently.
+     * 
+     * @param playerId
+     * @param name
+     * @param lastSeen 
+     */
+    private void update(UUID playerId, String name, long lastSeen) {
+        String oldName = namesById.put(playerId, name);
+        lastSeenById.put(playerId, lastSeen);
+        
+        // Only forget the old name if nobody else has taken it since.
+        if (oldName != null && !oldName.equals(name)) {
+            idsByName.remove(toKey(oldName), playerId);
+        }
+        
+        String key = toKey(name);
+        UUID claimant = idsByName.get(key);
+        
+        if (claimant == null || claimant.equals(playerId) || getLastSeen(claimant) <= lastSeen) {
+            idsByName.put(key, playerId);
+        }
+        
+        changed = true;
+    }
+    
+    private long getLastSeen(UUID playerId) {
+        Long lastSeen = lastSeenById.get(playerId);
+        return lastSeen == null ? 0 : lastSeen;
+    }
+    
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onPlayerJoin(PlayerJoinEvent joinEvent) {
+        Player player = joinEvent.getPlayer();
+        update(player.getUniqueId(), player.getName());
+    }
+    
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent quitEvent) {
+        Player player = quitEvent.getPlayer();
+        update(player.getUniqueId(), player.getName());
+    }
+    
+    /**
+     * Replaces the contents of the index with the names saved in the given file.
+     * Nothing happens if the file doesn't exist.
+     * 
+     * Lines without a last seen time are treated as older than any with one,
+     * and among themselves a later line wins.
+     * 
+     * @param file
+     * @throws IOException 
+     */
+    public void load(File file) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        
+        idsByName.clear();
+        namesById.clear();
+        lastSeenById.clear();
+        
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                
+                if (fields.length >= 2 && !fields[0].isEmpty() && !fields[1].isEmpty()) {
+                    try {
+                        long lastSeen = fields.length > 2 ? Long.parseLong(fields[2]) : 0;
+                        update(UUID.fromString(fields[0]), fields[1], lastSeen);
+                    } catch (IllegalArgumentException malformedLine) {
+                        // Skip the line.
+                    }
+                }
+            }
+        }
+        
+        changed = false;
+    }
+    
+    /**
+     * Writes the index to the given file if it changed since it was last
+     * loaded or saved. The file is replaced only once it has been completely
+     * written.
+     * 
+     * @param file
+     * @throws IOException 
+     */
+    public synchronized void saveIfChanged(File file) throws IOException {
+        if (!changed) {
+            return;
+        }
+        
+        // Cleared first, so a change made while writing is saved next time.
+        changed = false;
+        
+        File tempFile = new File(file.getPath() + ".tmp");
+        
+        try {
+            try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tempFile), StandardCharsets.UTF_8))) {
+                for (Map.Entry<UUID, String> entry : namesById.entrySet()) {
+                    writer.write(entry.getKey().toString());
+                    writer.write('\t');
+                    writer.write(entry.getValue());
+                    writer.write('\t');
+                    writer.write(Long.toString(getLastSeen(entry.getKey())));
+                    writer.newLine();
+                }
+            }
+            
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException failure) {
+            changed = true;
+            throw failure;
+        }
+    }
+    
+    private static String toKey(String name) {
+        return name.toLowerCase(Locale.ENGLISH);
+    }
+}
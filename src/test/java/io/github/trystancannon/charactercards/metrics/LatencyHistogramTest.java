@@ -0,0 +1,93 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2015 Trystan Cannon.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package io.github.trystancannon.charactercards.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Checks that each duration is counted in the bucket whose <code>le</code>
+ * bound is the smallest one at least as long.
+ * 
+ * @author Trystan Cannon
+ */
+public class LatencyHistogramTest {
+    @Test
+    public void shortDurationsGoInTheFirstBucket() {
+        assertEquals(0, bucketOfRecorded(0));
+        assertEquals(0, bucketOfRecorded(1));
+        assertEquals(0, bucketOfRecorded(2));
+    }
+    
+    @Test
+    public void powerOfTwoGoesInTheBucketItBounds() {
+        for (int bucket = 0; bucket < LatencyHistogram.BUCKET_COUNT - 1; bucket++) {
+            long bound = LatencyHistogram.getUpperBoundNanos(bucket);
+            
+            assertEquals("2^k = " + bound, bucket, bucketOfRecorded(bound));
+            assertEquals("2^k + 1 = " + (bound + 1), bucket + 1, bucketOfRecorded(bound + 1));
+        }
+    }
+    
+    @Test
+    public void longDurationsGoInTheLastBucket() {
+        long lastBound = LatencyHistogram.getUpperBoundNanos(LatencyHistogram.BUCKET_COUNT - 2);
+        
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, bucketOfRecorded(lastBound + 1));
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, bucketOfRecorded(Long.MAX_VALUE));
+    }
+    
+    @Test
+    public void percentileIsTheBoundOfItsBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(1024);
+        
+        assertEquals(1024, histogram.getPercentileNanos(100));
+    }
+    
+    /**
+     * Records a single duration into an empty histogram.
+     * 
+     * @param nanos
+     * @return Index of the bucket which counted it.
+     */
+    private static int bucketOfRecorded(long nanos) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(nanos);
+        
+        long[] counts = histogram.getBucketCounts();
+        int recordedBucket = -1;
+        
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            if (counts[bucket] > 0) {
+                assertTrue("Counted in more than one bucket.", recordedBucket < 0);
+                recordedBucket = bucket;
+            }
+        }
+        
+        return recordedBucket;
+    }
+}